@@ -4,12 +4,20 @@ import javalib.worldimages.OutlineMode;
 import javalib.worldimages.Posn;
 import javalib.worldimages.RectangleImage;
 import javalib.worldimages.TextImage;
+import javalib.worldimages.WorldImage;
 import tester.Tester;
 
 import java.awt.*;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Random;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 interface ICell {
   // set the left cell
@@ -28,9 +36,30 @@ interface ICell {
 
   ArrayList<Cell> getNeighbors();
 
+  // visit each of the adjacent cells that is not empty, without allocating
+  void forEachNeighbor(ICellVisitor visitor);
+
+  // visit this cell, as the neighbor of another, if it is not empty
+  void visitAsNeighbor(ICellVisitor visitor);
+
   boolean isEmptyCell();
 }
 
+// Something done to each neighbor of a cell
+interface ICellVisitor {
+  // do it to the given cell
+  void visit(Cell c);
+}
+
+// Collects the cells it visits into a list
+class NeighborList implements ICellVisitor {
+  ArrayList<Cell> cells = new ArrayList<Cell>();
+
+  public void visit(Cell c) {
+    this.cells.add(c);
+  }
+}
+
 class MtCell implements ICell {
 
   MtCell() {
@@ -64,6 +93,15 @@ class MtCell implements ICell {
     return new ArrayList<Cell>();
   }
 
+  public void forEachNeighbor(ICellVisitor visitor) {
+    return;
+  }
+
+  // an empty cell is nobody's neighbor
+  public void visitAsNeighbor(ICellVisitor visitor) {
+    return;
+  }
+
   public boolean isEmptyCell() {
     return true;
   }
@@ -120,301 +158,1267 @@ class Cell implements ICell {
   }
 
   public ArrayList<Cell> getNeighbors() {
-    ArrayList<Cell> neighbors = new ArrayList<Cell>();
-    if (!this.left.isEmptyCell()) {
-      neighbors.add((Cell) this.left);
-    }
-    if (!this.top.isEmptyCell()) {
-      neighbors.add((Cell) this.top);
-    }
-    if (!this.right.isEmptyCell()) {
-      neighbors.add((Cell) this.right);
+    NeighborList neighbors = new NeighborList();
+    this.forEachNeighbor(neighbors);
+    return neighbors.cells;
+  }
+
+  // each neighbor decides for itself whether it is visited, so there is no
+  // check for empty cells and no cast
+  public void forEachNeighbor(ICellVisitor visitor) {
+    this.left.visitAsNeighbor(visitor);
+    this.top.visitAsNeighbor(visitor);
+    this.right.visitAsNeighbor(visitor);
+    this.bottom.visitAsNeighbor(visitor);
+  }
+
+  public void visitAsNeighbor(ICellVisitor visitor) {
+    visitor.visit(this);
+  }
+}
+
+// A SplitMix64 random number generator, giving the same numbers as a
+// java.util.SplittableRandom made from the same seed, that can be seeded again
+// instead of being thrown away
+class SeededRandom {
+  // the seed, moved along by one step for every number
+  long state;
+
+  // constructor
+  SeededRandom(long seed) {
+    this.state = seed;
+  }
+
+  // start over from the given seed
+  void setSeed(long seed) {
+    this.state = seed;
+  }
+
+  // the next random long
+  long nextLong() {
+    this.state += 0x9e3779b97f4a7c15L;
+    return SeededRandom.mix(this.state);
+  }
+
+  // the next random int from 0 up to the given bound, uniform to within 1 in 2^32
+  int nextInt(int bound) {
+    return (int) (((this.nextLong() >>> 32) * bound) >>> 32);
+  }
+
+  // scramble the bits of the given seed
+  static long mix(long z) {
+    z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+    z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+    return z ^ (z >>> 31);
+  }
+}
+
+// A compact board engine: one palette index per cell and one bit of flood state per cell.
+// Cells are numbered in row major order, so the neighbours of a cell are found by
+// index arithmetic instead of following pointers.
+class FloodItBoard {
+  // number of cells along each side
+  int size;
+
+  // total number of cells
+  int numCells;
+
+  // palette index of every cell
+  byte[] colors;
+
+  // flood state of every cell, 64 cells per word
+  long[] flooded;
+
+  // constructor
+  FloodItBoard(int size) {
+    this.size = size;
+    this.numCells = size * size;
+    this.colors = new byte[this.numCells];
+    this.flooded = new long[(this.numCells + 63) >>> 6];
+  }
+
+  // the palette index of the given cell
+  int getColor(int index) {
+    return this.colors[index] & 0xFF;
+  }
+
+  // set the palette index of the given cell
+  void setColor(int index, int color) {
+    this.colors[index] = (byte) color;
+  }
+
+  // is the given cell flooded?
+  boolean isFlooded(int index) {
+    return (this.flooded[index >>> 6] & (1L << index)) != 0;
+  }
+
+  // flood the given cell
+  void setFlooded(int index) {
+    this.flooded[index >>> 6] |= 1L << index;
+  }
+
+  // color the given number of cells of a colors array from the given offset,
+  // the same way for the same seed; each random long colors two cells: every
+  // 32 bit half is scaled down to a color, which is uniform to within 1 in 2^32.
+  // The SplitMix64 steps are done in place so nothing is allocated
+  static void fill(byte[] colors, int offset, int count, int numColors, long seed) {
+    long state = seed;
+    for (int i = 0; i < count; i += 2) {
+      state += 0x9e3779b97f4a7c15L;
+      long bits = SeededRandom.mix(state);
+      colors[offset + i] = (byte) (((bits >>> 32) * numColors) >>> 32);
+      if (i + 1 < count) {
+        colors[offset + i + 1] = (byte) (((bits & 0xFFFFFFFFL) * numColors) >>> 32);
+      }
     }
-    if (!this.bottom.isEmptyCell()) {
-      neighbors.add((Cell) this.bottom);
+  }
+
+  // clear the flood state of every cell
+  void clearFlooded() {
+    Arrays.fill(this.flooded, 0L);
+  }
+
+  // is every cell flooded?
+  boolean allFlooded() {
+    int fullWords = this.numCells >>> 6;
+    for (int i = 0; i < fullWords; i++) {
+      if (this.flooded[i] != -1L) {
+        return false;
+      }
     }
-    return neighbors;
+    int rest = this.numCells & 63;
+    return rest == 0 || this.flooded[fullWords] == (1L << rest) - 1;
+  }
+
+  // the index of the cell to the left of the given one, or -1 on the left edge
+  int left(int index) {
+    return index % this.size == 0 ? -1 : index - 1;
+  }
+
+  // the index of the cell above the given one, or -1 on the top edge
+  int top(int index) {
+    return index < this.size ? -1 : index - this.size;
+  }
+
+  // the index of the cell to the right of the given one, or -1 on the right edge
+  int right(int index) {
+    return index % this.size == this.size - 1 ? -1 : index + 1;
+  }
+
+  // the index of the cell below the given one, or -1 on the bottom edge
+  int bottom(int index) {
+    return index >= this.numCells - this.size ? -1 : index + this.size;
   }
 }
 
-class FloodItWorld extends World {
-  // All the cells of the game
-  ArrayList<Cell> board;
+// Something that wants to hear about the cells of a board changing
+interface IBoardListener {
+  // the color or flood state of the cell at the given index changed
+  void cellChanged(int index);
+}
 
-  // list of different colors (Max 8 different colors)
-  ArrayList<Color> colors = new ArrayList<Color>(Arrays.asList(Color.red, Color.green,
-      Color.blue, Color.yellow, Color.orange, Color.pink, Color.cyan, Color.magenta));
+// A listener that ignores every change, for games nobody is watching
+class NoBoardListener implements IBoardListener {
+  public void cellChanged(int index) {
+    return;
+  }
+}
 
-  // list of colors for this particular game
-  ArrayList<Color> gameColors = new ArrayList<Color>();
+// The cells a move floods and recolors, worked out without changing the board:
+// every flooded cell, and every cell of the move's color next to them or to the
+// cells it floods, laid out in layers by distance from the top left cell. Only
+// flooded cells and the colors of cells that aren't flooded are read, and those
+// don't change while a wave is shown, so the next move can be worked out on
+// another thread while the last one is still being shown.
+class WaveLayers {
+  // palette index of the move
+  int color;
+
+  // the cells in the order the wave reaches them: layer k is
+  // cells[layerStart[k] .. layerStart[k + 1])
+  int[] cells;
+  int[] layerStart;
+  int layerCount = 0;
+
+  // the number of cells the move floods in layers 0 .. k, capturedThrough[k]
+  int[] capturedThrough;
+
+  // number of cells the move floods
+  int captured = 0;
+
+  // cells that have already been put in a layer
+  BitSet visited;
+
+  // empty layers for a board of the given size; they grow when needed
+  WaveLayers(FloodItBoard grid) {
+    this.cells = new int[Math.min(grid.numCells, 4 * grid.size)];
+    this.layerStart = new int[2 * grid.size];
+    this.capturedThrough = new int[2 * grid.size];
+    this.visited = new BitSet(grid.numCells);
+  }
 
-  // random number generator
-  Random rand;
+  // lay out the move of the given color on the given board
+  void plan(FloodItBoard grid, int color) {
+    this.color = color;
+    this.visited.clear();
+    this.captured = 0;
+    this.cells[0] = 0;
+    this.visited.set(0);
+    int count = 1;
+    int layers = 0;
+    int begin = 0;
+    while (begin < count) {
+      if (layers + 1 == this.layerStart.length) {
+        int length = Math.min(grid.numCells + 1, 2 * this.layerStart.length);
+        this.layerStart = Arrays.copyOf(this.layerStart, length);
+        this.capturedThrough = Arrays.copyOf(this.capturedThrough, length);
+      }
+      // every cell of this layer was found when the last layer was walked
+      this.layerStart[layers] = begin;
+      this.capturedThrough[layers] = this.captured;
+      layers++;
+      int end = count;
+      for (int i = begin; i < end; i++) {
+        int index = this.cells[i];
+        count = this.lay(grid, grid.left(index), count);
+        count = this.lay(grid, grid.top(index), count);
+        count = this.lay(grid, grid.right(index), count);
+        count = this.lay(grid, grid.bottom(index), count);
+      }
+      begin = end;
+    }
+    this.layerStart[layers] = count;
+    this.layerCount = layers;
+  }
 
-  // number of colors
-  int numColors;
+  // put the given neighbor in the next layer if it hasn't been visited and is
+  // either flooded or of the move's color; returns the new number of cells
+  int lay(FloodItBoard grid, int index, int count) {
+    if (index < 0 || this.visited.get(index)) {
+      return count;
+    }
+    if (!grid.isFlooded(index)) {
+      if (grid.getColor(index) != this.color) {
+        return count;
+      }
+      this.captured++;
+    }
+    this.visited.set(index);
+    if (count == this.cells.length) {
+      this.cells = Arrays.copyOf(this.cells, Math.min(grid.numCells, 2 * this.cells.length));
+    }
+    this.cells[count] = index;
+    return count + 1;
+  }
+
+  // the number of cells in the layers
+  int size() {
+    return this.layerStart[this.layerCount];
+  }
+}
+
+// The rules of Flood-It without anything to draw: a board, the moves made on it
+// and whether the game is over. A move floods its cells as soon as it is made,
+// and its new color spreads over the board one ring per call to step(), so a
+// caller can animate it, or all at once through applyMove().
+class FloodItEngine {
+  // The board the game is played on
+  FloodItBoard grid;
 
   // size of the board
   int size;
 
+  // number of colors, which are the palette indices 0 .. numColors - 1
+  int numColors;
+
   // number of attempts
   int attempts = 0;
 
   // maximum number of attempts
   int maxAttempts;
 
-  // game over?
-  boolean gameOver = false;
+  // the seed the board was colored from, which colors the same board again
+  long seed;
 
-  // set the size of the scene
-  int sceneSize = 1000;
+  // palette index of the color being flooded
+  int clickedColor;
 
-  // set the size of the board
-  int boardSize = 750;
+  // the layers of the wave being shown; applyMove uses its cells as a stack
+  WaveLayers wave;
 
-  // set the size of each cell
-  int cellSize;
+  // the layers the next move is worked out in, swapped with wave when it is made
+  WaveLayers spare;
 
-  boolean allFlooded = false;
+  // the next layer step() recolors
+  int nextLayer = 0;
 
-  Color clickedColor;
+  // is there a wave from the top left cell still to be worked out? A new game
+  // works its first wave out on the first step, so the grid can be written
+  // over before then
+  boolean wavePending = false;
 
-  ArrayList<ICell> toFlood = new ArrayList<ICell>();
+  // number of cells flooded for the first time by the current wave
+  int captured = 0;
 
-  ArrayList<ICell> visited = new ArrayList<ICell>();
+  // number of flooded cells
+  int floodedCount = 0;
 
-  boolean animating = false;
+  // number of cells of each color that are not flooded yet
+  int[] remaining;
+
+  // told about every cell the flood changes
+  IBoardListener listener = new NoBoardListener();
+
+  // where the moves of every game are written down, or null if they aren't
+  MoveJournal journal = null;
+
+  // the board as bit planes, which applyMove floods 64 cells at a time, or
+  // null to flood cell by cell
+  BitboardFlood bitboard = null;
+
+  // is the board small enough to estimate how hard it is?
+  boolean estimates;
+
+  // has the difficulty of the board been worked out since it was colored?
+  boolean estimated = false;
 
+  // the fewest moves a greedy player floods the board in, and no player
+  // floods it in fewer than minMoves, once the board is estimated
+  int greedyMoves = 0;
+  int minMoves = 0;
+
+  // a number no other board of any engine has, given to the board whenever it
+  // is colored, so an estimate knows when it has the regions of this board
+  long boardId;
+  static final AtomicLong boards = new AtomicLong();
+
+  // the number of attempts cannotWin() was last worked out for, or -1 if the
+  // board has changed since, and what it was
+  int checkedAttempts = -1;
+  boolean cannotWin = false;
+
+  // the most cells of a board whose difficulty is estimated, unless an engine
+  // is made with a limit of its own
+  static final int maxEstimatedCells = 64 * 64;
 
   // constructor
-  FloodItWorld(int size, int numColors) {
-    // check that the number of colors is between 3 and 8
-    if (numColors < 3 || numColors > 8) {
-      throw new IllegalArgumentException("You must have between 3 and 8 colors (inclusive)");
-    } else if (size < 2 || size > 26) {
-      throw new IllegalArgumentException("You must have between 2 and 26 cells (inclusive)");
-    }
+  FloodItEngine(int size, int numColors, long seed) {
+    this(size, numColors, seed, FloodItEngine.maxEstimatedCells);
+  }
 
-    // initialize board as an arraylist of size arraylists
-    this.board = new ArrayList<Cell>();
+  // constructor for an engine that estimates the difficulty of boards of up
+  // to the given number of cells, and allows a number of attempts proportional
+  // to the size of the board and the number of colors on bigger ones
+  FloodItEngine(int size, int numColors, long seed, int maxEstimatedCells) {
+    if (numColors < 3 || numColors > 256) {
+      throw new IllegalArgumentException("You must have between 3 and 256 colors (inclusive)");
+    } else if (size < 2 || size > 16384) {
+      throw new IllegalArgumentException("You must have between 2 and 16384 cells (inclusive)");
+    }
 
-    // record the size and number of colors
     this.size = size;
     this.numColors = numColors;
 
-    // set the size of each cell
-    this.cellSize = this.boardSize / this.size;
+    this.grid = new FloodItBoard(this.size);
+    this.remaining = new int[this.numColors];
 
-    // set the maximum number of attempts to a value
-    // proportional to the size of the board and the number of colors
-    this.maxAttempts = this.size + ((this.numColors - 3) * (this.size / 3));
+    this.wave = new WaveLayers(this.grid);
+    this.spare = new WaveLayers(this.grid);
+    this.estimates = this.grid.numCells <= maxEstimatedCells;
 
-    // initialize the random number generator
-    this.rand = new Random();
+    this.reset(seed);
+  }
 
-    // randomly select the colors for this game
-    for (int i = 0; i < numColors; i++) {
-      int randIndex = this.rand.nextInt(this.colors.size());
-      this.gameColors.add(this.colors.get(randIndex));
-      this.colors.remove(randIndex);
+  // a new game whose starting region is already flooded
+  static FloodItEngine newGame(int size, int numColors, long seed) {
+    FloodItEngine engine = new FloodItEngine(size, numColors, seed);
+    engine.finishWave();
+    return engine;
+  }
+
+  // start over on a board colored from the given seed, with only the top left
+  // cell flooded; the rest of its region is flooded by the first wave
+  void reset(long seed) {
+    this.fillGrid(seed);
+
+    this.maxAttempts = FloodItEngine.allowedAttempts(this.size, this.numColors,
+        this.estimate() ? this.greedyMoves : -1);
+    if (this.journal != null) {
+      this.journal.begin(this);
     }
+    this.attempts = 0;
+    this.clickedColor = this.grid.getColor(0);
+    this.wavePending = true;
+    this.wave.layerCount = 0;
+    this.nextLayer = 0;
+  }
 
-    // initialize each cell in the board
-    for (int row = 0; row < size; row++) {
-      for (int col = 0; col < size; col++) {
-        Cell c = new Cell((col * this.cellSize) + ((this.cellSize / 2) + 125),
-            (row * this.cellSize) + ((this.cellSize / 2) + 125),
-            this.gameColors.get(this.rand.nextInt(this.numColors)));
-        this.board.add(c);
-      }
+  // the most attempts a game allows: as many as a greedy player needs on its
+  // board, given as greedyMoves, or on a board too big to estimate, where it
+  // is -1, a number proportional to the size of the board and the number of colors
+  static int allowedAttempts(int size, int numColors, int greedyMoves) {
+    return greedyMoves >= 0 ? greedyMoves : size + ((numColors - 3) * (size / 3));
+  }
+
+  // randomly color every cell of the grid from the given seed and flood the first cell
+  void fillGrid(long seed) {
+    this.seed = seed;
+    FloodItBoard.fill(this.grid.colors, 0, this.grid.numCells, this.numColors, seed);
+    this.grid.clearFlooded();
+    this.grid.setFlooded(0);
+    this.recount();
+  }
+
+  // flood instant moves by bit planes or cell by cell; the bit planes take a
+  // bit per cell for every color and are built whenever the board is colored
+  void useBitboard(boolean on) {
+    if (!on) {
+      this.bitboard = null;
+    } else if (this.bitboard == null) {
+      this.bitboard = new BitboardFlood(this.size, this.numColors);
+      this.bitboard.load(this.grid);
     }
+  }
 
-    // set the left, top, right, and bottom cells for each cell
-    for (Cell c : this.board) {
-      int col = (c.x - ((this.cellSize / 2) + 125)) / this.cellSize;
-      int row = (c.y - ((this.cellSize / 2) + 125)) / this.cellSize;
-      // set the left cell
-      if (col == 0) {
-        c.setLeft(new MtCell());
+  // count the flooded cells and the cells of each color left from scratch,
+  // for when the grid has been changed without going through flood()
+  void recount() {
+    if (this.bitboard != null) {
+      this.bitboard.load(this.grid);
+    }
+    this.boardId = FloodItEngine.boards.incrementAndGet();
+    this.estimated = false;
+    this.checkedAttempts = -1;
+    Arrays.fill(this.remaining, 0);
+    this.floodedCount = 0;
+    for (int i = 0; i < this.grid.numCells; i++) {
+      if (this.grid.isFlooded(i)) {
+        this.floodedCount++;
       } else {
-        c.setLeft(this.board.get((row * size) + (col - 1)));
+        this.remaining[this.grid.getColor(i)]++;
       }
-      // set the top cell
-      if (row == 0) {
-        c.setTop(new MtCell());
-      } else {
-        c.setTop(this.board.get(((row - 1) * size) + col));
+    }
+  }
+
+  // flood the given cell if it isn't already, keeping the counts up to date
+  void flood(int index) {
+    if (!this.grid.isFlooded(index)) {
+      this.grid.setFlooded(index);
+      this.floodedCount++;
+      this.remaining[this.grid.getColor(index)]--;
+      this.captured++;
+    }
+  }
+
+  // work out the wave of the clicked color from the top left cell at once,
+  // for step() to recolor one layer at a time
+  void startWave() {
+    this.spare.plan(this.grid, this.clickedColor);
+    this.showPlan();
+  }
+
+  // make the layers worked out in spare the wave being shown, flooding the
+  // cells they capture
+  void showPlan() {
+    WaveLayers swap = this.wave;
+    this.wave = this.spare;
+    this.spare = swap;
+    this.wavePending = false;
+    this.nextLayer = 0;
+    this.captured = 0;
+    int count = this.wave.size();
+    for (int i = 0; i < count; i++) {
+      this.flood(this.wave.cells[i]);
+    }
+  }
+
+  // forget the rest of the wave, for when the grid has been written over
+  void stopWave() {
+    this.wavePending = false;
+    this.nextLayer = this.wave.layerCount;
+  }
+
+  // write every move of this game and of the games after it down in the given
+  // journal; a game can only be written down from its start
+  void recordMoves(MoveJournal journal) {
+    if (this.attempts > 0) {
+      throw new IllegalStateException("Moves can only be recorded from the start of a game");
+    }
+    this.journal = journal;
+    journal.begin(this);
+  }
+
+  // write the given move down, if moves are being written down
+  void record(int color) {
+    if (this.journal != null) {
+      this.journal.record(color);
+    }
+  }
+
+  // is a wave still spreading?
+  boolean isSpreading() {
+    return this.wavePending || this.nextLayer < this.wave.layerCount;
+  }
+
+  // the number of cells the next step recolors
+  int waveSize() {
+    if (this.wavePending) {
+      return 1;
+    } else if (!this.isSpreading()) {
+      return 0;
+    }
+    return this.wave.layerStart[this.nextLayer + 1] - this.wave.layerStart[this.nextLayer];
+  }
+
+  // make a move: flood the region with the given palette index at once, and
+  // recolor it one ring per step; the last wave is finished first
+  void startMove(int color) {
+    this.finishWave();
+    this.spare.plan(this.grid, color);
+    this.startPlannedMove();
+  }
+
+  // work the move of the given color out in spare, to be made next by
+  // startPlannedMove(); this only reads the board, and can be done on
+  // another thread while the last wave is being shown
+  void planMove(int color) {
+    this.spare.plan(this.grid, color);
+  }
+
+  // make the move worked out by planMove, once the last wave is shown
+  void startPlannedMove() {
+    this.finishWave();
+    this.record(this.spare.color);
+    this.attempts++;
+    this.clickedColor = this.spare.color;
+    this.showPlan();
+  }
+
+  // make a move and spread it over the whole board at once,
+  // returning the number of cells it flooded
+  int applyMove(int color) {
+    // once a wave is done the flooded region is all one color, and none of
+    // its neighbors share that color
+    this.finishWave();
+    this.record(color);
+    this.attempts++;
+    this.clickedColor = color;
+    this.captured = 0;
+    if (this.grid.getColor(0) == color) {
+      return 0;
+    }
+    if (this.bitboard != null) {
+      return this.applyBitboardMove(color);
+    }
+
+    // walk the region and the cells it captures in one pass, using the cells
+    // of the wave as a stack: a flooded cell has been reached once it has the
+    // new color
+    int top = 0;
+    this.grid.setColor(0, color);
+    this.listener.cellChanged(0);
+    this.wave.cells[top] = 0;
+    top++;
+    while (top > 0) {
+      top--;
+      int index = this.wave.cells[top];
+      top = this.captureNeighbor(this.grid.left(index), top);
+      top = this.captureNeighbor(this.grid.top(index), top);
+      top = this.captureNeighbor(this.grid.right(index), top);
+      top = this.captureNeighbor(this.grid.bottom(index), top);
+    }
+    return this.captured;
+  }
+
+  // flood the cells the given color reaches by bit planes, then recolor every
+  // flooded cell; returns the number of cells it flooded
+  int applyBitboardMove(int color) {
+    this.captured = this.bitboard.flood(this.grid.flooded, color);
+    this.floodedCount += this.captured;
+    this.remaining[color] -= this.captured;
+    boolean watched = !(this.listener instanceof NoBoardListener);
+    for (int w = 0; w < this.grid.flooded.length; w++) {
+      long bits = this.grid.flooded[w];
+      // nobody needs telling about a word of flooded cells, which is filled at once
+      if (bits == -1L && !watched) {
+        Arrays.fill(this.grid.colors, w << 6, (w << 6) + 64, (byte) color);
+        continue;
       }
-      // set the right cell
-      if (col == this.size - 1) {
-        c.setRight(new MtCell());
-      } else {
-        c.setRight(this.board.get((row * this.size) + (col + 1)));
+      while (bits != 0) {
+        int index = (w << 6) + Long.numberOfTrailingZeros(bits);
+        this.grid.setColor(index, color);
+        this.listener.cellChanged(index);
+        bits &= bits - 1;
       }
-      // set the bottom cell
-      if (row == this.size - 1) {
-        c.setBottom(new MtCell());
-      } else {
-        c.setBottom(this.board.get(((row + 1) * this.size) + col));
+    }
+    return this.captured;
+  }
+
+  // recolor the given neighbor if it is flooded, or flood it if it has the
+  // clicked color, and push it on the stack of size top; returns the new size
+  int captureNeighbor(int index, int top) {
+    if (index < 0) {
+      return top;
+    }
+    int color = this.grid.getColor(index);
+    if (this.grid.isFlooded(index)) {
+      if (color == this.clickedColor) {
+        return top;
       }
+      this.grid.setColor(index, this.clickedColor);
+    } else if (color == this.clickedColor) {
+      this.flood(index);
+    } else {
+      return top;
+    }
+    this.listener.cellChanged(index);
+    if (top == this.wave.cells.length) {
+      this.wave.cells = Arrays.copyOf(this.wave.cells,
+          Math.min(this.grid.numCells, 2 * this.wave.cells.length));
     }
+    this.wave.cells[top] = index;
+    return top + 1;
+  }
 
-    // flood the first cell
-    this.board.get(0).flooded = true;
+  // spread the current wave until it stops, returning the number of cells it flooded
+  int finishWave() {
+    while (this.isSpreading()) {
+      this.step();
+    }
+    return this.captured;
+  }
 
-    // set the clicked color
-    this.clickedColor = this.board.get(0).color;
+  // recolor the next layer of the wave, returning the number of its cells the
+  // move flooded; between moves there is no wave, and nothing is done
+  int step() {
+    if (this.wavePending) {
+      this.startWave();
+    } else if (!this.isSpreading()) {
+      return 0;
+    }
+    WaveLayers wave = this.wave;
+    int layer = this.nextLayer;
+    int end = wave.layerStart[layer + 1];
+    for (int i = wave.layerStart[layer]; i < end; i++) {
+      int index = wave.cells[i];
+      this.grid.setColor(index, this.clickedColor);
+      this.listener.cellChanged(index);
+    }
+    this.nextLayer++;
+    return wave.capturedThrough[layer] - (layer == 0 ? 0 : wave.capturedThrough[layer - 1]);
+  }
 
-    this.toFlood.add(this.board.get(0));
+  // number of moves made so far
+  int movesUsed() {
+    return this.attempts;
   }
 
-  // reset the game
-  public void reset() {
-    // initialize board as an arraylist of size arraylists
-    this.board = new ArrayList<Cell>();
+  // is every cell flooded?
+  boolean isWon() {
+    return this.floodedCount == this.grid.numCells;
+  }
 
-    // reset colors
-    this.colors = new ArrayList<Color>(Arrays.asList(Color.red, Color.green,
-        Color.blue, Color.yellow, Color.orange, Color.pink, Color.cyan, Color.magenta));
+  // the number of cells of the given color that are not flooded yet
+  int remaining(int color) {
+    return this.remaining[color];
+  }
 
-    // reset game colors
-    this.gameColors = new ArrayList<Color>();
+  // have more moves been made than allowed?
+  boolean isLost() {
+    return this.attempts > this.maxAttempts;
+  }
 
-    // reset the number of attempts
-    this.attempts = 0;
+  // is the game over, because the board is flooded, the attempts have run out
+  // or the attempts left can't flood the board?
+  boolean isOver() {
+    return this.isWon() || this.isLost() || this.cannotWin();
+  }
+
+  // work out how hard the board is, once after it is colored, in an estimate
+  // borrowed for the while; returns false if the board is too big to estimate
+  boolean estimate() {
+    if (this.estimates && !this.estimated) {
+      DifficultyEstimate estimate = DifficultyEstimate.borrow(this.grid.numCells, this.numColors);
+      estimate.estimate(this.grid, this.numColors, this.boardId);
+      this.greedyMoves = estimate.greedyMoves;
+      this.minMoves = estimate.minMoves;
+      estimate.giveBack();
+      this.estimated = true;
+    }
+    return this.estimates;
+  }
+
+  // can the moves left no longer flood the board? Every move counts as an
+  // attempt, so this is worked out once per move and remembered until the next
+  boolean cannotWin() {
+    if (this.checkedAttempts != this.attempts) {
+      this.cannotWin = this.attempts + this.movesLeft() > this.maxAttempts;
+      this.checkedAttempts = this.attempts;
+    }
+    return this.cannotWin;
+  }
+
+  // a lower bound on the moves left to flood the board; on a board too big to
+  // estimate, only the colors left are counted, each of which needs a move
+  int movesLeft() {
+    int movesLeft = 0;
+    if (this.estimates) {
+      DifficultyEstimate estimate = DifficultyEstimate.borrow(this.grid.numCells, this.numColors);
+      movesLeft = estimate.movesLeft(this.grid, this.numColors, this.boardId);
+      estimate.giveBack();
+    } else {
+      for (int c = 0; c < this.numColors; c++) {
+        if (this.remaining[c] > 0) {
+          movesLeft++;
+        }
+      }
+    }
+    return movesLeft;
+  }
+
+  // the palette index of the cell at the given row and column
+  int colorAt(int row, int col) {
+    return this.grid.getColor((row * this.size) + col);
+  }
+
+  // is the cell at the given row and column flooded?
+  boolean isFloodedAt(int row, int col) {
+    return this.grid.isFlooded((row * this.size) + col);
+  }
+}
+
+class FloodItWorld extends World implements IBoardListener {
+  // The game being played, which this world draws and feeds clicks to
+  FloodItEngine engine;
+
+  // All the cells of the game, as a view of the engine's grid for drawing
+  ArrayList<Cell> board;
+
+  // the empty cell shared by every cell on the edge of the board
+  MtCell mt = new MtCell();
+
+  // every color a game can use: the first 8 are the classic colors, and games
+  // with more colors than that add generated ones (Max 256 different colors)
+  Color[] palette = {Color.red, Color.green, Color.blue, Color.yellow, Color.orange,
+      Color.pink, Color.cyan, Color.magenta};
+
+  // list of different colors not used by this game
+  ArrayList<Color> colors = new ArrayList<Color>(Arrays.asList(this.palette));
+
+  // list of colors for this particular game
+  ArrayList<Color> gameColors = new ArrayList<Color>();
+
+  // the seed of the current game: a world made with the same size, number of
+  // colors and seed has the same palette and board
+  long seed;
+
+  // random number generator, seeded from the seed of the game
+  SeededRandom rand;
+
+  // number of colors
+  int numColors;
+
+  // size of the board
+  int size;
+
+  // game over?
+  boolean gameOver = false;
+
+  // set the size of the scene
+  int sceneSize = 1000;
+
+  // set the size of the board
+  int boardSize = 750;
+
+  // set the size of each cell
+  int cellSize;
+
+  // is this a large board, drawn as a sample of its cells?
+  boolean largeBoard;
+
+  // largest size of a large board
+  int maxLargeSize = 16384;
+
+  // number of cells drawn along each side of the board
+  int viewSize;
+
+  // most cells drawn along each side of a large board
+  int maxViewSize = 75;
+
+  // grid index of the cell shown by each cell of the view
+  int[] viewIndex;
+
+  // does the view of a large board need to be read from the grid again?
+  boolean viewStale = false;
+
+  boolean allFlooded = false;
+
+  // did the game end early, because the attempts left can't flood the board?
+  boolean notEnoughAttempts = false;
+
+  boolean animating = false;
+
+  // does a click flood the whole board at once instead of one ring per tick?
+  boolean instantMoves = false;
+
+  // the scene drawn last frame, which the next frame paints its changes over
+  WorldScene scene;
+
+  // number of images placed on the scene since it was last drawn from scratch
+  int placedImages = 0;
+
+  // cells of the view whose color changed since the last frame
+  BitSet dirty = new BitSet();
+
+  // the image of a cell of each color of the game, shared by every cell of that color
+  ArrayList<WorldImage> cellImages = new ArrayList<WorldImage>();
+
+  // the image of a cell of each color of the palette
+  WorldImage[] paletteImages;
+
+  // the images that never change during a game
+  WorldImage borderImage;
+  WorldImage titleImage;
+  WorldImage sizeImage;
+  WorldImage colorsImage;
+  WorldImage instructionsImage;
+
+  // covers the attempts counter so a new count can be drawn over it
+  WorldImage attemptsCover = new RectangleImage(150, 30, OutlineMode.SOLID, Color.white);
+
+  // the attempts counter and the number of attempts it shows
+  WorldImage attemptsImage;
+  int shownAttempts = -1;
+
+  // the scene shown once the game is over
+  WorldScene endScene;
+
+  // when the move being animated was clicked, and its Flight Recorder event
+  // if one is being recorded
+  boolean moveInFlight = false;
+  long moveStartNanos;
+  MoveEvent moveEvent = null;
+
+  // moves clicked while a wave is shown, oldest first: the clicked cell, its
+  // color and when it was clicked. Each is made as the wave before it ends
+  int[] queuedCells = new int[4];
+  int[] queuedColors = new int[4];
+  long[] queuedNanos = new long[4];
+  int queuedCount = 0;
+
+  // the first queued move being worked out on the planner thread, or null
+  Future<?> planning = null;
+
+  // works queued moves out while waves are shown, for every world
+  static ExecutorService planner = Executors.newSingleThreadExecutor(r -> {
+    Thread t = new Thread(r, "flood-it-planner");
+    t.setDaemon(true);
+    return t;
+  });
+
+  // looks for the best move while the player thinks, when hints are shown
+  HintEngine hints = new HintEngine();
+  boolean showHints = false;
+
+  // the color of the hint drawn beside the attempts counter, or -1 for none
+  int shownHint = -1;
+
+  // covers the hint so a new one can be drawn over it, and its label
+  WorldImage hintCover = new RectangleImage(150, 30, OutlineMode.SOLID, Color.white);
+  WorldImage hintLabel = new TextImage("Hint", 20, Color.black);
+
+  // constructor
+  FloodItWorld(int size, int numColors) {
+    this(size, numColors, false);
+  }
+
+  // constructor for a board that is either drawn cell by cell or, when large,
+  // drawn as an evenly spaced sample of its cells
+  FloodItWorld(int size, int numColors, boolean largeBoard) {
+    this(size, numColors, largeBoard, new SplittableRandom().nextLong());
+  }
+
+  // constructor for the game of the given seed
+  FloodItWorld(int size, int numColors, boolean largeBoard, long seed) {
+    // check that the number of colors is between 3 and 256
+    if (numColors < 3 || numColors > 256) {
+      throw new IllegalArgumentException("You must have between 3 and 256 colors (inclusive)");
+    } else if (!largeBoard && (size < 2 || size > 26)) {
+      throw new IllegalArgumentException("You must have between 2 and 26 cells (inclusive)");
+    } else if (largeBoard && (size < 2 || size > this.maxLargeSize)) {
+      throw new IllegalArgumentException("You must have between 2 and "
+          + this.maxLargeSize + " cells (inclusive)");
+    }
+
+    // record the size and number of colors
+    this.size = size;
+    this.numColors = numColors;
+    this.largeBoard = largeBoard;
+
+    // set the number of cells drawn and the size of each of them
+    this.viewSize = largeBoard ? Math.min(this.size, this.maxViewSize) : this.size;
+    this.cellSize = this.boardSize / this.viewSize;
 
     // initialize the random number generator
-    this.rand = new Random();
+    this.seed = seed;
+    this.rand = new SeededRandom(seed);
 
     // randomly select the colors for this game
-    for (int i = 0; i < numColors; i++) {
-      int randIndex = this.rand.nextInt(this.colors.size());
-      this.gameColors.add(this.colors.get(randIndex));
-      this.colors.remove(randIndex);
+    this.palette = FloodItWorld.extendPalette(this.palette, numColors);
+    this.makeImages();
+    this.pickColors();
+
+    // start the game and build the cells that show it
+    this.engine = new FloodItEngine(this.size, this.numColors, this.rand.nextLong());
+    this.engine.listener = this;
+    this.makeView();
+  }
+
+  // the given palette with generated colors added until it has the given
+  // number of colors; they step around the color wheel by the golden angle
+  // through a few bands of saturation and brightness, skipping any color
+  // already in the palette, so neighboring indices look different
+  static Color[] extendPalette(Color[] palette, int numColors) {
+    if (numColors <= palette.length) {
+      return palette;
+    }
+    Color[] result = Arrays.copyOf(palette, numColors);
+    HashSet<Integer> used = new HashSet<Integer>();
+    for (Color c : palette) {
+      used.add(c.getRGB());
+    }
+    int i = palette.length;
+    for (int k = 1; i < numColors; k++) {
+      float hue = (float) ((k * 0.6180339887498949) % 1.0);
+      float saturation = 0.45f + 0.275f * (k % 3);
+      float brightness = 0.55f + 0.225f * ((k / 3) % 3);
+      Color c = Color.getHSBColor(hue, saturation, brightness);
+      if (used.add(c.getRGB())) {
+        result[i] = c;
+        i++;
+      }
+    }
+    return result;
+  }
+
+  // randomly select the colors for this game, refilling the lists already made
+  void pickColors() {
+    this.colors.clear();
+    for (Color c : this.palette) {
+      this.colors.add(c);
+    }
+    this.gameColors.clear();
+    this.cellImages.clear();
+    for (int i = 0; i < this.numColors; i++) {
+      this.addGameColor(this.colors.get(this.rand.nextInt(this.colors.size())));
     }
+  }
+
+  // make the given color of the palette the next color of this game
+  void addGameColor(Color c) {
+    for (int p = 0; p < this.palette.length; p++) {
+      if (this.palette[p].equals(c)) {
+        this.colors.remove(this.palette[p]);
+        this.gameColors.add(this.palette[p]);
+        this.cellImages.add(this.paletteImages[p]);
+        return;
+      }
+    }
+    throw new IllegalArgumentException("The color " + c + " is not in the palette");
+  }
+
+  // build the cells that show the grid on screen
+  void makeView() {
+    int numViewCells = this.viewSize * this.viewSize;
+    this.board = new ArrayList<Cell>(numViewCells);
+    this.viewIndex = new int[numViewCells];
 
     // initialize each cell in the board
-    for (int row = 0; row < size; row++) {
-      for (int col = 0; col < size; col++) {
+    for (int row = 0; row < this.viewSize; row++) {
+      for (int col = 0; col < this.viewSize; col++) {
+        // the grid cell in the same place as this one, which is itself
+        // unless the board is sampled
+        int index = (int) ((long) row * this.size / this.viewSize) * this.size
+            + (int) ((long) col * this.size / this.viewSize);
+        this.viewIndex[(row * this.viewSize) + col] = index;
         Cell c = new Cell((col * this.cellSize) + ((this.cellSize / 2) + 125),
             (row * this.cellSize) + ((this.cellSize / 2) + 125),
-            this.gameColors.get(this.rand.nextInt(this.numColors)));
+            this.gameColors.get(this.engine.grid.getColor(index)));
+        c.flooded = this.engine.grid.isFlooded(index);
         this.board.add(c);
       }
     }
 
     // set the left, top, right, and bottom cells for each cell
-    for (Cell c : this.board) {
-      int col = (c.x - ((this.cellSize / 2) + 125)) / this.cellSize;
-      int row = (c.y - ((this.cellSize / 2) + 125)) / this.cellSize;
-      // set the left cell
-      if (col == 0) {
-        c.setLeft(new MtCell());
-      } else {
-        c.setLeft(this.board.get((row * size) + (col - 1)));
-      }
-      // set the top cell
-      if (row == 0) {
-        c.setTop(new MtCell());
-      } else {
-        c.setTop(this.board.get(((row - 1) * size) + col));
-      }
-      // set the right cell
-      if (col == this.size - 1) {
-        c.setRight(new MtCell());
-      } else {
-        c.setRight(this.board.get((row * this.size) + (col + 1)));
-      }
-      // set the bottom cell
-      if (row == this.size - 1) {
-        c.setBottom(new MtCell());
-      } else {
-        c.setBottom(this.board.get(((row + 1) * this.size) + col));
-      }
+    for (int i = 0; i < numViewCells; i++) {
+      Cell c = this.board.get(i);
+      int col = i % this.viewSize;
+      c.setLeft(col == 0 ? this.mt : this.board.get(i - 1));
+      c.setTop(i < this.viewSize ? this.mt : this.board.get(i - this.viewSize));
+      c.setRight(col == this.viewSize - 1 ? this.mt : this.board.get(i + 1));
+      c.setBottom(i >= numViewCells - this.viewSize ? this.mt
+          : this.board.get(i + this.viewSize));
+    }
+  }
+
+  // build the images that are shared by every frame of every game of this world
+  void makeImages() {
+    this.paletteImages = new WorldImage[this.palette.length];
+    for (int p = 0; p < this.palette.length; p++) {
+      this.paletteImages[p] = new RectangleImage(this.cellSize, this.cellSize,
+          OutlineMode.SOLID, this.palette[p]);
     }
+    this.borderImage = new RectangleImage(this.sceneSize - 235, this.sceneSize - 235,
+        OutlineMode.SOLID, Color.black);
+    this.titleImage = new TextImage("Flood-It", 35, Color.black);
+    this.sizeImage = new TextImage("Size: " + this.size, 20, Color.black);
+    this.colorsImage = new TextImage("Colors: " + this.numColors, 20, Color.black);
+    this.instructionsImage = new TextImage("Click cells. Fill the board with a single color.",
+        20, Color.black);
+
+    // every frame has to be drawn from scratch again
+    this.scene = null;
+    this.endScene = null;
+    this.shownAttempts = -1;
+    this.shownHint = -1;
+  }
 
-    // flood the first cell
-    this.board.get(0).flooded = true;
+  // copy the color and flood state of the given grid index to the cell showing it
+  public void cellChanged(int index) {
+    // only some cells of a large board are shown, so its view is read
+    // from the grid again once the tick is done
+    if (this.largeBoard) {
+      this.viewStale = true;
+      return;
+    }
+    this.updateCell(index, index);
+  }
 
-    this.toFlood = new ArrayList<ICell>(Arrays.asList(this.board.get(0)));
-    this.visited = new ArrayList<ICell>();
+  // copy the color and flood state of the given grid index to the given cell
+  // of the view, which has to be drawn again if its color changed
+  void updateCell(int viewCell, int index) {
+    Cell c = this.board.get(viewCell);
+    Color color = this.gameColors.get(this.engine.grid.getColor(index));
+    if (c.color != color) {
+      c.color = color;
+      this.dirty.set(viewCell);
+    }
+    c.flooded = this.engine.grid.isFlooded(index);
+  }
+
+  // read every cell of the view from the grid again
+  void refreshView() {
+    for (int i = 0; i < this.board.size(); i++) {
+      this.updateCell(i, this.viewIndex[i]);
+    }
+    this.viewStale = false;
+  }
+
+  // reset the game, to the next game of the seed this world was made with
+  public void reset() {
+    this.reset(this.rand.nextLong());
+  }
+
+  // reset the game to the game of the given seed, recoloring the grid and the
+  // cells that show it in place; nothing is allocated
+  public void reset(long seed) {
+    this.seed = seed;
+    this.rand.setSeed(seed);
+    this.pickColors();
+
+    // the queued move being worked out on the planner thread reads the grid,
+    // so it is finished before the grid is filled again
+    this.dropQueuedMoves();
+
+    // start a new game on the same grid, and show it on the same cells, which
+    // are painted over the last frame when their color changed
+    this.engine.reset(this.rand.nextLong());
+    this.refreshView();
+    this.shownAttempts = -1;
+    this.endScene = null;
 
     this.gameOver = false;
     this.allFlooded = false;
+    this.notEnoughAttempts = false;
+    this.animating = false;
+    this.moveInFlight = false;
+    this.moveEvent = null;
+    this.updateHint();
+    FloodItMetrics.shared.reset();
   }
 
   public void isGameOver() {
-    // check if the game is over (all cells are flooded)
-    if (this.attempts > this.maxAttempts) {
-      this.gameOver = true;
-      return;
-    }
-    for (Cell c : this.board) {
-      if (!c.flooded) {
-        return;
-      }
+    // check if the game is over: all cells are flooded, the attempts have run
+    // out, or the attempts left can't flood the board
+    if (!this.engine.isOver()) {
+      return;
     }
-    this.allFlooded = true;
     this.gameOver = true;
+    this.allFlooded = this.engine.isWon() && !this.engine.isLost();
+    this.notEnoughAttempts = !this.allFlooded && !this.engine.isLost();
   }
 
   public WorldScene makeScene() {
+    long start = System.nanoTime();
+    SceneEvent event = null;
+    if (FloodItMetrics.sceneProbe.isEnabled()) {
+      event = new SceneEvent();
+      event.begin();
+    }
+    boolean fromScratch = !this.gameOver
+        && (this.scene == null || this.placedImages > 2 * this.board.size());
+    int cells = this.gameOver ? 0 : fromScratch ? this.board.size() : this.dirty.cardinality();
+
+    WorldScene result = this.paintScene();
+
+    FloodItMetrics.shared.frame(System.nanoTime() - start);
+    if (event != null) {
+      event.end();
+      event.cellsPlaced = cells;
+      event.fromScratch = fromScratch;
+      event.commit();
+    }
+    return result;
+  }
+
+  // the scene of this frame, painted over the last one where it can be
+  WorldScene paintScene() {
     // if the game is over, return the last scene
     if (this.gameOver) {
       return this.lastScene();
     }
 
+    // draw from scratch when there is no scene yet, or when painting over it has
+    // piled up as many images as a whole frame
+    if (this.scene == null || this.placedImages > 2 * this.board.size()) {
+      this.drawScene();
+      return this.scene;
+    }
+
+    // paint the cells whose color changed over the last frame
+    for (int i = this.dirty.nextSetBit(0); i >= 0; i = this.dirty.nextSetBit(i + 1)) {
+      Cell c = this.board.get(i);
+      this.scene.placeImageXY(this.cellImage(i), c.x, c.y);
+      this.placedImages++;
+    }
+    this.dirty.clear();
+
+    // cover the attempts counter and draw the new count if it changed
+    if (this.shownAttempts != this.engine.attempts) {
+      this.scene.placeImageXY(this.attemptsCover, 800, 60);
+      this.scene.placeImageXY(this.attemptsImage(), 800, 60);
+      this.placedImages += 2;
+    }
+
+    // draw the hint if a better one was found
+    this.drawHint();
+
+    // return the scene
+    return this.scene;
+  }
+
+  // draw the whole scene from scratch
+  void drawScene() {
     // create scene
-    WorldScene scene = new WorldScene(this.sceneSize, this.sceneSize);
+    this.scene = new WorldScene(this.sceneSize, this.sceneSize);
 
     // draw black border around the board
-    scene.placeImageXY(new RectangleImage(this.sceneSize - 235, this.sceneSize - 235,
-            OutlineMode.SOLID, Color.black),
-        this.board.get(this.size / 2).x - (this.cellSize / 2),
-        this.board.get((this.size / 2) * this.size).y - (this.cellSize / 2));
+    this.scene.placeImageXY(this.borderImage,
+        this.board.get(this.viewSize / 2).x - (this.cellSize / 2),
+        this.board.get((this.viewSize / 2) * this.viewSize).y - (this.cellSize / 2));
 
     // draw the board
-    for (Cell c : this.board) {
-      scene.placeImageXY(new RectangleImage(this.cellSize, this.cellSize,
-          OutlineMode.SOLID, c.color), c.x, c.y);
+    for (int i = 0; i < this.board.size(); i++) {
+      Cell c = this.board.get(i);
+      this.scene.placeImageXY(this.cellImage(i), c.x, c.y);
     }
 
     // create "Flood-It" title
-    scene.placeImageXY(new TextImage("Flood-It", 35, Color.black),
-        this.sceneSize / 2, 25);
+    this.scene.placeImageXY(this.titleImage, this.sceneSize / 2, 25);
 
     // include game details, including size and number of colors
-    scene.placeImageXY(new TextImage("Size: " + this.size,
-        20, Color.black), this.sceneSize / 2, 60);
-    scene.placeImageXY(new TextImage("Colors: " + this.numColors,
-        20, Color.black), this.sceneSize / 2, 85);
+    this.scene.placeImageXY(this.sizeImage, this.sceneSize / 2, 60);
+    this.scene.placeImageXY(this.colorsImage, this.sceneSize / 2, 85);
 
     // include attempts counter in format "0/25" underneath board
-    scene.placeImageXY(new TextImage(this.attempts + "/" + this.maxAttempts,
-        20, Color.black), 800, 60);
+    this.scene.placeImageXY(this.attemptsImage(), 800, 60);
 
     // include game instructions at the bottom of the screen
-    scene.placeImageXY(new TextImage("Click cells. Fill the board with a single color.",
-        20, Color.black), this.sceneSize / 2, 900);
+    this.scene.placeImageXY(this.instructionsImage, this.sceneSize / 2, 900);
 
-    // return the scene
-    return scene;
+    // include the hint, if hints are shown, underneath the attempts counter
+    this.shownHint = -1;
+    this.drawHint();
+
+    this.placedImages = 0;
+    this.dirty.clear();
+  }
+
+  // the shared image of the color of the given cell of the view
+  WorldImage cellImage(int viewCell) {
+    return this.cellImages.get(this.engine.grid.getColor(this.viewIndex[viewCell]));
+  }
+
+  // the attempts counter, made again only when the number of attempts changes
+  WorldImage attemptsImage() {
+    if (this.shownAttempts != this.engine.attempts) {
+      this.shownAttempts = this.engine.attempts;
+      this.attemptsImage = new TextImage(this.engine.attempts + "/" + this.engine.maxAttempts,
+          20, Color.black);
+    }
+    return this.attemptsImage;
+  }
+
+  // the color of the hint to show, or -1 for none; reading it never waits for
+  // the search
+  int hintColor() {
+    Hint hint = this.showHints ? this.hints.hint() : null;
+    return hint == null ? -1 : hint.color;
+  }
+
+  // cover the hint and draw the new one if it changed
+  void drawHint() {
+    int color = this.hintColor();
+    if (color == this.shownHint) {
+      return;
+    }
+    this.scene.placeImageXY(this.hintCover, 800, 95);
+    this.placedImages++;
+    if (color >= 0) {
+      this.scene.placeImageXY(this.hintLabel, 780, 95);
+      this.scene.placeImageXY(new RectangleImage(20, 20, OutlineMode.SOLID,
+          this.gameColors.get(color)), 830, 95);
+      this.placedImages += 2;
+    }
+    this.shownHint = color;
+  }
+
+  // search the board for a hint again after it changed, or only stop searching
+  // when no hint is shown or the board the next move is made on isn't known yet
+  void updateHint() {
+    if (this.showHints && !this.gameOver && this.queuedCount == 0) {
+      this.hints.restart(this.engine);
+    } else {
+      this.hints.cancel();
+    }
   }
 
   public WorldScene lastScene() {
+    // the game can't change once it is over, so the last scene is made once
+    if (this.endScene != null) {
+      return this.endScene;
+    }
+
     // make the last scene
     WorldScene scene = new WorldScene(1000, 1000);
 
     // create "Flood-It" title
-    scene.placeImageXY(new TextImage("Flood-It", 35, Color.black),
-        500, 25);
+    scene.placeImageXY(this.titleImage, 500, 25);
 
     // include game details, including size and number of colors
-    scene.placeImageXY(new TextImage("Size: " + this.size,
-        20, Color.black), 500, 60);
+    scene.placeImageXY(this.sizeImage, 500, 60);
 
-    scene.placeImageXY(new TextImage("Colors: " + this.numColors,
-        20, Color.black), 500, 85);
+    scene.placeImageXY(this.colorsImage, 500, 85);
 
     // if the player won, display "You Win!"
     if (this.allFlooded) {
@@ -423,7 +1427,8 @@ class FloodItWorld extends World {
       scene.placeImageXY(
           new TextImage("Congratulations!", 35, Color.black), 500, 500);
       scene.placeImageXY(
-          new TextImage("You Used " + this.attempts + " of " + this.maxAttempts + " Attempts!",
+          new TextImage("You Used " + this.engine.attempts + " of "
+              + this.engine.maxAttempts + " Attempts!",
               35, Color.black), 500, 550);
     } else {
       // if the player lost, display "You Lose!"
@@ -431,85 +1436,229 @@ class FloodItWorld extends World {
           500, 450);
       scene.placeImageXY(new TextImage("You Lose!", 35, Color.black),
           500, 500);
-      scene.placeImageXY(new TextImage("You Ran Out of Attempts!", 35, Color.black),
-          500, 550);
+      scene.placeImageXY(new TextImage(this.notEnoughAttempts ? "Not Enough Attempts Left!"
+          : "You Ran Out of Attempts!", 35, Color.black), 500, 550);
     }
 
     // return the scene
+    this.endScene = scene;
     return scene;
   }
 
+  // is there nothing for a tick to do? Between moves and once the game is over
+  // the board can't change until the next click, so whatever drives the world
+  // can stop ticking it and drawing it until then
+  boolean isQuiescent() {
+    return this.gameOver || !this.engine.isSpreading();
+  }
+
   public void onTick() {
-    // if the game is over, do nothing
-    this.isGameOver();
-    if (this.gameOver) {
+    // between moves and once the game is over, do nothing
+    if (this.isQuiescent()) {
+      this.animating = false;
       return;
     }
-    // if waterfall animation is over, reset flood states
-    if (this.toFlood.isEmpty()) {
-      this.visited = new ArrayList<ICell>();
-      this.toFlood.add(this.board.get(0));
-      this.animating = false;
+    // a move past the last attempt loses before it is shown; a move that
+    // wins is shown to the end
+    if (this.engine.isLost()) {
+      this.endMove(System.nanoTime());
+      this.isGameOver();
+      this.dropQueuedMoves();
+      return;
+    }
+    long start = System.nanoTime();
+    TickEvent event = null;
+    if (FloodItMetrics.tickProbe.isEnabled()) {
+      event = new TickEvent();
+      event.begin();
     }
-    // flood all cells for this round and set up for next round
-    ArrayList<ICell> nextToFlood = new ArrayList<ICell>();
-    ArrayList<ICell> nextVisited = new ArrayList<ICell>();
-    // for every cell in the board
-    for (Cell c : this.board) {
-      // if the cell is in the list of cells to flood
-      if (this.toFlood.contains(c)) {
-        // add to the list of visited cells
-        nextVisited.add(c);
-        // get the color of the cell's neighbor before it is changed
-        Color neighborColor = c.color;
-        // change the color
-        c.color = this.clickedColor;
-        // add the cell's neighbors to the list of cells to flood
-        // if they haven't been visited and should be flooded
-        for (Cell n : c.getNeighbors()) {
-          if (!this.visited.contains(n) && n.shouldFlood(neighborColor, this.clickedColor)) {
-            n.flooded = true;
-            nextToFlood.add(n);
-          }
-        }
 
-      }
+    // recolor the next layer of the wave
+    int recolored = this.engine.waveSize();
+    int captured = this.engine.step();
+
+    if (this.viewStale) {
+      this.refreshView();
+    }
+
+    long now = System.nanoTime();
+    FloodItMetrics.shared.tick(now - start, captured);
+    if (event != null) {
+      event.end();
+      event.cellsRecolored = recolored;
+      event.cellsCaptured = captured;
+      event.commit();
+    }
+
+    // the move is done once its wave stops spreading, which is the only time
+    // the game can end
+    if (this.engine.isSpreading()) {
+      return;
+    }
+    this.animating = false;
+    this.isGameOver();
+    this.endMove(now);
+
+    // the next queued move is shown from the next tick
+    if (this.gameOver) {
+      this.dropQueuedMoves();
+    } else if (this.queuedCount > 0) {
+      this.makeQueuedMove();
     }
-    // update the list of cells to flood
-    this.toFlood = nextToFlood;
-    // update the list of visited cells
-    this.visited.addAll(nextVisited);
   }
 
-  public void onMousePressed(Posn pos) {
-    System.out.println(pos.x + ", " + pos.y);
-    if (this.animating) {
+  // count the move in flight as made, at the given time, once its wave is
+  // shown or it loses before it is shown
+  void endMove(long now) {
+    if (!this.moveInFlight) {
       return;
     }
+    this.moveInFlight = false;
+    FloodItMetrics.shared.move(now - this.moveStartNanos);
+    if (this.moveEvent != null) {
+      this.moveEvent.end();
+      this.moveEvent.cellsCaptured = this.engine.captured;
+      this.moveEvent.commit();
+      this.moveEvent = null;
+    }
+  }
+
+  public void onMousePressed(Posn pos) {
     // check if the click is within the board
     if (pos.x > 125 && pos.x < 875 && pos.y > 125 && pos.y < 875) {
 
 
       // get the cell that was clicked with a margin of half the cell size
-      Cell clicked = this.board.get((pos.y - 125) / this.cellSize * this.size
-          + (pos.x - 125) / this.cellSize);
+      int col = (pos.x - 125) / this.cellSize;
+      int row = (pos.y - 125) / this.cellSize;
+      if (col >= this.viewSize || row >= this.viewSize) {
+        return;
+      }
+      int clicked = this.viewIndex[(row * this.viewSize) + col];
 
       // check if the cell is flooded
-      if (!clicked.flooded) {
-        // increment the number of attempts
-        this.attempts++;
-        // store the color of the clicked cell
-        this.clickedColor = clicked.color;
-        this.animating = true;
+      if (!this.engine.grid.isFlooded(clicked)) {
+        long start = System.nanoTime();
+        int color = this.engine.grid.getColor(clicked);
+        // a click while a wave is shown waits for it to end
+        if (this.animating) {
+          this.queueMove(clicked, color, start);
+        } else {
+          this.makeMove(clicked, color, start, false);
+        }
+      }
+    }
+  }
+
+  // flood the color of the clicked cell, which counts as an attempt, either
+  // working the move out now or making the one worked out while it was queued
+  void makeMove(int clicked, int color, long start, boolean planned) {
+    MoveEvent event = null;
+    if (FloodItMetrics.moveProbe.isEnabled()) {
+      event = new MoveEvent();
+      event.begin();
+      event.color = color;
+      event.row = clicked / this.size;
+      event.col = clicked % this.size;
+      event.attempts = this.engine.attempts + 1;
+    }
+
+    if (this.instantMoves) {
+      int captured = this.engine.applyMove(color);
+      this.isGameOver();
+      FloodItMetrics.shared.instantMove(System.nanoTime() - start, captured);
+      if (event != null) {
+        event.end();
+        event.instant = true;
+        event.cellsCaptured = captured;
+        event.commit();
+      }
+    } else {
+      if (planned) {
+        this.engine.startPlannedMove();
+      } else {
+        this.engine.startMove(color);
       }
+      this.animating = true;
+      this.moveInFlight = true;
+      this.moveStartNanos = start;
+      this.moveEvent = event;
+    }
+    this.updateHint();
+  }
+
+  // queue a move clicked while a wave is shown, unless the queue is full or
+  // the move is the color the board will already have by then; the first
+  // queued move is worked out on the planner thread while the wave is shown
+  void queueMove(int clicked, int color, long start) {
+    int last = this.queuedCount == 0 ? this.engine.clickedColor
+        : this.queuedColors[this.queuedCount - 1];
+    if (this.queuedCount == this.queuedCells.length || color == last) {
+      return;
+    }
+    this.queuedCells[this.queuedCount] = clicked;
+    this.queuedColors[this.queuedCount] = color;
+    this.queuedNanos[this.queuedCount] = start;
+    this.queuedCount++;
+    if (this.queuedCount == 1) {
+      this.planNextMove();
+    }
+    this.updateHint();
+  }
+
+  // work the first queued move out on the planner thread
+  void planNextMove() {
+    FloodItEngine engine = this.engine;
+    int color = this.queuedColors[0];
+    this.planning = FloodItWorld.planner.submit(() -> engine.planMove(color));
+  }
+
+  // wait for the queued move being worked out, if there is one
+  void awaitPlan() {
+    if (this.planning == null) {
+      return;
+    }
+    try {
+      this.planning.get();
+    } catch (InterruptedException | ExecutionException e) {
+      throw new IllegalStateException("A queued move could not be worked out", e);
+    } finally {
+      this.planning = null;
+    }
+  }
+
+  // make the first queued move, once the wave before it is shown, and start
+  // working out the one after it
+  void makeQueuedMove() {
+    this.awaitPlan();
+    int clicked = this.queuedCells[0];
+    int color = this.queuedColors[0];
+    long start = this.queuedNanos[0];
+    this.queuedCount--;
+    System.arraycopy(this.queuedCells, 1, this.queuedCells, 0, this.queuedCount);
+    System.arraycopy(this.queuedColors, 1, this.queuedColors, 0, this.queuedCount);
+    System.arraycopy(this.queuedNanos, 1, this.queuedNanos, 0, this.queuedCount);
+    this.makeMove(clicked, color, start, true);
+    if (this.queuedCount > 0) {
+      this.planNextMove();
     }
   }
 
+  // forget every queued move
+  void dropQueuedMoves() {
+    this.awaitPlan();
+    this.queuedCount = 0;
+  }
+
   public void onKeyEvent(String key) {
     // check if the key pressed is "r"
     if (key.equals("r")) {
       // reset the game
       this.reset();
+    } else if (key.equals("h")) {
+      // show or hide hints
+      this.showHints = !this.showHints;
+      this.updateHint();
     }
   }
 }
@@ -554,11 +1703,62 @@ class ExamplesFloodIt {
         new IllegalArgumentException("You must have between 2 and 26 cells (inclusive)"),
         "FloodItWorld", 27, 3);
     t.checkConstructorException(
-        new IllegalArgumentException("You must have between 3 and 8 colors (inclusive)"),
+        new IllegalArgumentException("You must have between 3 and 256 colors (inclusive)"),
         "FloodItWorld", 4, 1);
     t.checkConstructorException(
-        new IllegalArgumentException("You must have between 3 and 8 colors (inclusive)"),
-        "FloodItWorld", 4, 9);
+        new IllegalArgumentException("You must have between 3 and 256 colors (inclusive)"),
+        "FloodItWorld", 4, 257);
+  }
+
+  // test for illegal arguments to a large board
+  void testIllegalLargeArguments(Tester t) {
+    t.checkConstructorException(
+        new IllegalArgumentException("You must have between 2 and 16384 cells (inclusive)"),
+        "FloodItWorld", 1, 3, true);
+    t.checkConstructorException(
+        new IllegalArgumentException("You must have between 2 and 16384 cells (inclusive)"),
+        "FloodItWorld", 16385, 3, true);
+    t.checkConstructorException(
+        new IllegalArgumentException("You must have between 3 and 256 colors (inclusive)"),
+        "FloodItWorld", 100, 257, true);
+  }
+
+  // test a large board, which is drawn as a sample of its cells
+  void testLargeBoard(Tester t) {
+    FloodItWorld large = new FloodItWorld(1000, 4, true);
+    t.checkExpect(large.engine.grid.numCells, 1000000);
+    t.checkExpect(large.viewSize, 75);
+    t.checkExpect(large.cellSize, 10);
+    t.checkExpect(large.board.size(), 5625);
+    t.checkExpect(large.viewIndex[0], 0);
+    t.checkExpect(large.viewIndex[1], 13);
+    t.checkExpect(large.viewIndex[75], 13000);
+    t.checkExpect(large.viewIndex[5624], 986986);
+    t.checkExpect(large.board.get(1).color,
+        large.gameColors.get(large.engine.grid.getColor(13)));
+
+    // the first tick floods the whole grid, which the view follows, and the
+    // wave goes on recoloring it one ring at a time
+    for (int i = 0; i < large.engine.grid.numCells; i++) {
+      large.engine.grid.setColor(i, 1);
+    }
+    large.engine.clickedColor = 1;
+    for (int i = 0; i < 13; i++) {
+      large.onTick();
+    }
+    t.checkExpect(large.engine.grid.isFlooded(14), true);
+    t.checkExpect(large.engine.floodedCount, 1000000);
+    t.checkExpect(large.board.get(2).flooded, true);
+    t.checkExpect(large.engine.wave.layerCount, 1999);
+    t.checkExpect(large.engine.nextLayer, 13);
+    t.checkExpect(large.engine.waveSize(), 14);
+    t.checkExpect(large.engine.wave.cells[large.engine.wave.layerStart[13]], 13);
+
+    // a large board that is small enough is drawn cell by cell
+    FloodItWorld small = new FloodItWorld(30, 3, true);
+    t.checkExpect(small.viewSize, 30);
+    t.checkExpect(small.cellSize, 25);
+    t.checkExpect(small.viewIndex[31], 31);
   }
 
   // test the size of the board
@@ -618,10 +1818,11 @@ class ExamplesFloodIt {
     // test the reset method
     t.checkExpect(world1.colors.size(), 5);
     t.checkExpect(world1.gameColors.size(), 3);
-    t.checkExpect(world1.attempts, 0);
+    t.checkExpect(world1.engine.attempts, 0);
     t.checkExpect(world1.board.get(0).flooded, true);
-    t.checkExpect(world1.toFlood, new ArrayList<ICell>(Arrays.asList(world1.board.get(0))));
-    t.checkExpect(world1.visited, new ArrayList<ICell>());
+    t.checkExpect(world1.engine.waveSize(), 1);
+    t.checkExpect(world1.engine.wave.cells[0], 0);
+    t.checkExpect(world1.engine.floodedCount, 1);
     t.checkExpect(world1.gameOver, false);
     t.checkExpect(world1.allFlooded, false);
 
@@ -631,10 +1832,11 @@ class ExamplesFloodIt {
     // test the reset method
     t.checkExpect(world2.colors.size(), 5);
     t.checkExpect(world2.gameColors.size(), 3);
-    t.checkExpect(world2.attempts, 0);
+    t.checkExpect(world2.engine.attempts, 0);
     t.checkExpect(world2.board.get(0).flooded, true);
-    t.checkExpect(world2.toFlood, new ArrayList<ICell>(Arrays.asList(world2.board.get(0))));
-    t.checkExpect(world2.visited, new ArrayList<ICell>());
+    t.checkExpect(world2.engine.waveSize(), 1);
+    t.checkExpect(world2.engine.wave.cells[0], 0);
+    t.checkExpect(world2.engine.floodedCount, 1);
     t.checkExpect(world2.gameOver, false);
     t.checkExpect(world2.allFlooded, false);
 
@@ -644,10 +1846,11 @@ class ExamplesFloodIt {
     // test the reset method
     t.checkExpect(world3.colors.size(), 4);
     t.checkExpect(world3.gameColors.size(), 4);
-    t.checkExpect(world3.attempts, 0);
+    t.checkExpect(world3.engine.attempts, 0);
     t.checkExpect(world3.board.get(0).flooded, true);
-    t.checkExpect(world3.toFlood, new ArrayList<ICell>(Arrays.asList(world3.board.get(0))));
-    t.checkExpect(world3.visited, new ArrayList<ICell>());
+    t.checkExpect(world3.engine.waveSize(), 1);
+    t.checkExpect(world3.engine.wave.cells[0], 0);
+    t.checkExpect(world3.engine.floodedCount, 1);
     t.checkExpect(world3.gameOver, false);
     t.checkExpect(world3.allFlooded, false);
 
@@ -657,10 +1860,11 @@ class ExamplesFloodIt {
     // test the reset method
     t.checkExpect(world4.colors.size(), 3);
     t.checkExpect(world4.gameColors.size(), 5);
-    t.checkExpect(world4.attempts, 0);
+    t.checkExpect(world4.engine.attempts, 0);
     t.checkExpect(world4.board.get(0).flooded, true);
-    t.checkExpect(world4.toFlood, new ArrayList<ICell>(Arrays.asList(world4.board.get(0))));
-    t.checkExpect(world4.visited, new ArrayList<ICell>());
+    t.checkExpect(world4.engine.waveSize(), 1);
+    t.checkExpect(world4.engine.wave.cells[0], 0);
+    t.checkExpect(world4.engine.floodedCount, 1);
     t.checkExpect(world4.gameOver, false);
     t.checkExpect(world4.allFlooded, false);
 
@@ -670,10 +1874,11 @@ class ExamplesFloodIt {
     // test the reset method
     t.checkExpect(world5.colors.size(), 2);
     t.checkExpect(world5.gameColors.size(), 6);
-    t.checkExpect(world5.attempts, 0);
+    t.checkExpect(world5.engine.attempts, 0);
     t.checkExpect(world5.board.get(0).flooded, true);
-    t.checkExpect(world5.toFlood, new ArrayList<ICell>(Arrays.asList(world5.board.get(0))));
-    t.checkExpect(world5.visited, new ArrayList<ICell>());
+    t.checkExpect(world5.engine.waveSize(), 1);
+    t.checkExpect(world5.engine.wave.cells[0], 0);
+    t.checkExpect(world5.engine.floodedCount, 1);
     t.checkExpect(world5.gameOver, false);
     t.checkExpect(world5.allFlooded, false);
 
@@ -683,10 +1888,11 @@ class ExamplesFloodIt {
     // test the reset method
     t.checkExpect(world6.colors.size(), 1);
     t.checkExpect(world6.gameColors.size(), 7);
-    t.checkExpect(world6.attempts, 0);
+    t.checkExpect(world6.engine.attempts, 0);
     t.checkExpect(world6.board.get(0).flooded, true);
-    t.checkExpect(world6.toFlood, new ArrayList<ICell>(Arrays.asList(world6.board.get(0))));
-    t.checkExpect(world6.visited, new ArrayList<ICell>());
+    t.checkExpect(world6.engine.waveSize(), 1);
+    t.checkExpect(world6.engine.wave.cells[0], 0);
+    t.checkExpect(world6.engine.floodedCount, 1);
     t.checkExpect(world6.gameOver, false);
     t.checkExpect(world6.allFlooded, false);
 
@@ -696,10 +1902,11 @@ class ExamplesFloodIt {
     // test the reset method
     t.checkExpect(world7.colors.size(), 0);
     t.checkExpect(world7.gameColors.size(), 8);
-    t.checkExpect(world7.attempts, 0);
+    t.checkExpect(world7.engine.attempts, 0);
     t.checkExpect(world7.board.get(0).flooded, true);
-    t.checkExpect(world7.toFlood, new ArrayList<ICell>(Arrays.asList(world7.board.get(0))));
-    t.checkExpect(world7.visited, new ArrayList<ICell>());
+    t.checkExpect(world7.engine.waveSize(), 1);
+    t.checkExpect(world7.engine.wave.cells[0], 0);
+    t.checkExpect(world7.engine.floodedCount, 1);
     t.checkExpect(world7.gameOver, false);
     t.checkExpect(world7.allFlooded, false);
   }
@@ -723,29 +1930,29 @@ class ExamplesFloodIt {
 
     // World 3
     // test the isGameOver method
-    for (Cell c : world3.board) {
-      c.flooded = true;
+    for (int i = 0; i < world3.engine.grid.numCells; i++) {
+      world3.engine.flood(i);
     }
     world3.isGameOver();
     t.checkExpect(world3.gameOver, true);
 
     // World 4
     // test the isGameOver method
-    for (Cell c : world4.board) {
-      c.flooded = true;
+    for (int i = 0; i < world4.engine.grid.numCells; i++) {
+      world4.engine.flood(i);
     }
     world4.isGameOver();
     t.checkExpect(world4.gameOver, true);
 
     // World 5
     // test the isGameOver method
-    world5.attempts = world5.maxAttempts + 1;
+    world5.engine.attempts = world5.engine.maxAttempts + 1;
     world5.isGameOver();
     t.checkExpect(world5.gameOver, true);
 
     // World 6
     // test the isGameOver method
-    world6.attempts = world6.maxAttempts + 1;
+    world6.engine.attempts = world6.engine.maxAttempts + 1;
     world6.isGameOver();
     t.checkExpect(world6.gameOver, true);
 
@@ -775,7 +1982,7 @@ class ExamplesFloodIt {
     world1Scene.placeImageXY(new TextImage("Flood-It", 35, Color.black), 500, 25);
     world1Scene.placeImageXY(new TextImage("Size: 2", 20, Color.black), 500, 60);
     world1Scene.placeImageXY(new TextImage("Colors: 3", 20, Color.black), 500, 85);
-    world1Scene.placeImageXY(new TextImage("0/" + world1.maxAttempts, 20, Color.black), 800, 60);
+    world1Scene.placeImageXY(new TextImage("0/" + world1.engine.maxAttempts, 20, Color.black), 800, 60);
     world1Scene.placeImageXY(new TextImage("Click cells. Fill the board with a single color.",
         20, Color.black), 500, 900);
     t.checkExpect(this.world1.makeScene(), world1Scene);
@@ -794,7 +2001,7 @@ class ExamplesFloodIt {
     world2Scene.placeImageXY(new TextImage("Flood-It", 35, Color.black), 500, 25);
     world2Scene.placeImageXY(new TextImage("Size: 6", 20, Color.black), 500, 60);
     world2Scene.placeImageXY(new TextImage("Colors: 3", 20, Color.black), 500, 85);
-    world2Scene.placeImageXY(new TextImage("0/" + world2.maxAttempts, 20, Color.black), 800, 60);
+    world2Scene.placeImageXY(new TextImage("0/" + world2.engine.maxAttempts, 20, Color.black), 800, 60);
     world2Scene.placeImageXY(new TextImage("Click cells. Fill the board with a single color.",
         20, Color.black), 500, 900);
     t.checkExpect(this.world2.makeScene(), world2Scene);
@@ -813,7 +2020,7 @@ class ExamplesFloodIt {
     world3Scene.placeImageXY(new TextImage("Flood-It", 35, Color.black), 500, 25);
     world3Scene.placeImageXY(new TextImage("Size: 10", 20, Color.black), 500, 60);
     world3Scene.placeImageXY(new TextImage("Colors: 4", 20, Color.black), 500, 85);
-    world3Scene.placeImageXY(new TextImage("0/" + world3.maxAttempts, 20, Color.black), 800, 60);
+    world3Scene.placeImageXY(new TextImage("0/" + world3.engine.maxAttempts, 20, Color.black), 800, 60);
     world3Scene.placeImageXY(new TextImage("Click cells. Fill the board with a single color.",
         20, Color.black), 500, 900);
     t.checkExpect(this.world3.makeScene(), world3Scene);
@@ -832,7 +2039,7 @@ class ExamplesFloodIt {
     world4Scene.placeImageXY(new TextImage("Flood-It", 35, Color.black), 500, 25);
     world4Scene.placeImageXY(new TextImage("Size: 14", 20, Color.black), 500, 60);
     world4Scene.placeImageXY(new TextImage("Colors: 5", 20, Color.black), 500, 85);
-    world4Scene.placeImageXY(new TextImage("0/" + world4.maxAttempts, 20, Color.black), 800, 60);
+    world4Scene.placeImageXY(new TextImage("0/" + world4.engine.maxAttempts, 20, Color.black), 800, 60);
     world4Scene.placeImageXY(new TextImage("Click cells. Fill the board with a single color.",
         20, Color.black), 500, 900);
     t.checkExpect(this.world4.makeScene(), world4Scene);
@@ -851,7 +2058,7 @@ class ExamplesFloodIt {
     world5Scene.placeImageXY(new TextImage("Flood-It", 35, Color.black), 500, 25);
     world5Scene.placeImageXY(new TextImage("Size: 18", 20, Color.black), 500, 60);
     world5Scene.placeImageXY(new TextImage("Colors: 6", 20, Color.black), 500, 85);
-    world5Scene.placeImageXY(new TextImage("0/" + world5.maxAttempts, 20, Color.black), 800, 60);
+    world5Scene.placeImageXY(new TextImage("0/" + world5.engine.maxAttempts, 20, Color.black), 800, 60);
     world5Scene.placeImageXY(new TextImage("Click cells. Fill the board with a single color.",
         20, Color.black), 500, 900);
     t.checkExpect(this.world5.makeScene(), world5Scene);
@@ -870,7 +2077,7 @@ class ExamplesFloodIt {
     world6Scene.placeImageXY(new TextImage("Flood-It", 35, Color.black), 500, 25);
     world6Scene.placeImageXY(new TextImage("Size: 22", 20, Color.black), 500, 60);
     world6Scene.placeImageXY(new TextImage("Colors: 7", 20, Color.black), 500, 85);
-    world6Scene.placeImageXY(new TextImage("0/" + world6.maxAttempts, 20, Color.black), 800, 60);
+    world6Scene.placeImageXY(new TextImage("0/" + world6.engine.maxAttempts, 20, Color.black), 800, 60);
     world6Scene.placeImageXY(new TextImage("Click cells. Fill the board with a single color.",
         20, Color.black), 500, 900);
     t.checkExpect(this.world6.makeScene(), world6Scene);
@@ -889,12 +2096,62 @@ class ExamplesFloodIt {
     world7Scene.placeImageXY(new TextImage("Flood-It", 35, Color.black), 500, 25);
     world7Scene.placeImageXY(new TextImage("Size: 26", 20, Color.black), 500, 60);
     world7Scene.placeImageXY(new TextImage("Colors: 8", 20, Color.black), 500, 85);
-    world7Scene.placeImageXY(new TextImage("0/" + world7.maxAttempts, 20, Color.black), 800, 60);
+    world7Scene.placeImageXY(new TextImage("0/" + world7.engine.maxAttempts, 20, Color.black), 800, 60);
     world7Scene.placeImageXY(new TextImage("Click cells. Fill the board with a single color.",
         20, Color.black), 500, 900);
     t.checkExpect(this.world7.makeScene(), world7Scene);
   }
 
+  // test that frames are painted over the last one instead of built from scratch
+  void testRetainedScene(Tester t) {
+    // initialize the data
+    this.initWorldData();
+
+    // nothing changed, so the same scene is shown again
+    WorldScene first = this.world4.makeScene();
+    t.checkExpect(this.world4.makeScene() == first, true);
+    t.checkExpect(this.world4.placedImages, 0);
+
+    // cells of the same color share one image
+    t.checkExpect(this.world4.cellImages.size(), 5);
+    t.checkExpect(this.world4.cellImage(0)
+        == this.world4.cellImages.get(this.world4.engine.grid.getColor(0)), true);
+
+    // only the cells that changed color are painted over the last frame
+    this.world4.engine.startMove((this.world4.engine.grid.getColor(0) + 1) % 5);
+    this.world4.onTick();
+    int changed = this.world4.dirty.cardinality();
+    t.checkExpect(changed, 1);
+    t.checkExpect(this.world4.makeScene() == first, true);
+    t.checkExpect(this.world4.placedImages, changed + 2);
+    t.checkExpect(this.world4.dirty.isEmpty(), true);
+    t.checkExpect(this.world4.shownAttempts, 1);
+
+    // cells that are flooded again with the same color are not painted
+    this.world4.engine.finishWave();
+    this.world4.dirty.clear();
+    this.world4.engine.startMove(this.world4.engine.grid.getColor(0));
+    this.world4.engine.finishWave();
+    t.checkExpect(this.world4.dirty.isEmpty(), true);
+
+    // the scene is drawn from scratch once painting over it piles up
+    this.world4.placedImages = 2 * this.world4.board.size() + 1;
+    t.checkExpect(this.world4.makeScene() == first, false);
+    t.checkExpect(this.world4.placedImages, 0);
+
+    // a reset recolors the cells in place, so the new board is painted over
+    // the last frame
+    WorldScene second = this.world4.makeScene();
+    this.world4.reset();
+    t.checkExpect(this.world4.makeScene() == second, true);
+    t.checkExpect(this.world4.dirty.isEmpty(), true);
+    t.checkExpect(this.world4.shownAttempts, 0);
+
+    // the last scene is only made once
+    this.world4.gameOver = true;
+    t.checkExpect(this.world4.makeScene() == this.world4.makeScene(), true);
+  }
+
   // test the lastScene method
   void testLastScene(Tester t) {
     // initialize world examples
@@ -914,8 +2171,8 @@ class ExamplesFloodIt {
     scene1.placeImageXY(
         new TextImage("Congratulations!", 35, Color.black), 500, 500);
     scene1.placeImageXY(
-        new TextImage("You Used " + this.world1.attempts + " of " +
-            this.world1.maxAttempts + " Attempts!",
+        new TextImage("You Used " + this.world1.engine.attempts + " of " +
+            this.world1.engine.maxAttempts + " Attempts!",
             35, Color.black), 500, 550);
     t.checkExpect(this.world1.lastScene(), scene1);
 
@@ -950,8 +2207,8 @@ class ExamplesFloodIt {
     scene3.placeImageXY(
         new TextImage("Congratulations!", 35, Color.black), 500, 500);
     scene3.placeImageXY(
-        new TextImage("You Used " + this.world3.attempts + " of " +
-            this.world3.maxAttempts + " Attempts!",
+        new TextImage("You Used " + this.world3.engine.attempts + " of " +
+            this.world3.engine.maxAttempts + " Attempts!",
             35, Color.black), 500, 550);
     t.checkExpect(this.world3.lastScene(), scene3);
 
@@ -986,8 +2243,8 @@ class ExamplesFloodIt {
     scene5.placeImageXY(
         new TextImage("Congratulations!", 35, Color.black), 500, 500);
     scene5.placeImageXY(
-        new TextImage("You Used " + this.world5.attempts + " of " +
-            this.world5.maxAttempts + " Attempts!",
+        new TextImage("You Used " + this.world5.engine.attempts + " of " +
+            this.world5.engine.maxAttempts + " Attempts!",
             35, Color.black), 500, 550);
     t.checkExpect(this.world5.lastScene(), scene5);
 
@@ -1022,8 +2279,8 @@ class ExamplesFloodIt {
     scene7.placeImageXY(
         new TextImage("Congratulations!", 35, Color.black), 500, 500);
     scene7.placeImageXY(
-        new TextImage("You Used " + this.world7.attempts + " of " +
-            this.world7.maxAttempts + " Attempts!",
+        new TextImage("You Used " + this.world7.engine.attempts + " of " +
+            this.world7.engine.maxAttempts + " Attempts!",
             35, Color.black), 500, 550);
     t.checkExpect(this.world7.lastScene(), scene7);
 
@@ -1035,33 +2292,33 @@ class ExamplesFloodIt {
     // initialize world examples
     this.initWorldData();
 
-    int prevAttempts = this.world1.attempts;
+    int prevAttempts = this.world1.engine.attempts;
     this.world1.onMousePressed(new Posn(400, 400));
-    t.checkExpect(this.world1.attempts, prevAttempts);
+    t.checkExpect(this.world1.engine.attempts, prevAttempts);
 
-    prevAttempts = this.world2.attempts;
+    prevAttempts = this.world2.engine.attempts;
     this.world2.onMousePressed(new Posn(600, 600));
-    t.checkExpect(this.world2.attempts, prevAttempts + 1);
+    t.checkExpect(this.world2.engine.attempts, prevAttempts + 1);
 
-    prevAttempts = this.world3.attempts;
+    prevAttempts = this.world3.engine.attempts;
     this.world3.onMousePressed(new Posn(600, 600));
-    t.checkExpect(this.world3.attempts, prevAttempts + 1);
+    t.checkExpect(this.world3.engine.attempts, prevAttempts + 1);
 
-    prevAttempts = this.world4.attempts;
+    prevAttempts = this.world4.engine.attempts;
     this.world4.onMousePressed(new Posn(600, 600));
-    t.checkExpect(this.world4.attempts, prevAttempts + 1);
+    t.checkExpect(this.world4.engine.attempts, prevAttempts + 1);
 
-    prevAttempts = this.world5.attempts;
+    prevAttempts = this.world5.engine.attempts;
     this.world5.onMousePressed(new Posn(400, 400));
-    t.checkExpect(this.world5.attempts, prevAttempts + 1);
+    t.checkExpect(this.world5.engine.attempts, prevAttempts + 1);
 
-    prevAttempts = this.world6.attempts;
+    prevAttempts = this.world6.engine.attempts;
     this.world6.onMousePressed(new Posn(600, 600));
-    t.checkExpect(this.world6.attempts, prevAttempts + 1);
+    t.checkExpect(this.world6.engine.attempts, prevAttempts + 1);
 
-    prevAttempts = this.world7.attempts;
+    prevAttempts = this.world7.engine.attempts;
     this.world7.onMousePressed(new Posn(600, 600));
-    t.checkExpect(this.world7.attempts, prevAttempts + 1);
+    t.checkExpect(this.world7.engine.attempts, prevAttempts + 1);
   }
 
 
@@ -1078,11 +2335,11 @@ class ExamplesFloodIt {
     // test the reset method
     t.checkExpect(world1.colors.size(), 5);
     t.checkExpect(world1.gameColors.size(), 3);
-    t.checkExpect(world1.attempts, 0);
+    t.checkExpect(world1.engine.attempts, 0);
     t.checkExpect(world1.board.get(0).flooded, true);
-    t.checkExpect(world1.toFlood,
-        new ArrayList<ICell>(Arrays.asList(world1.board.get(0))));
-    t.checkExpect(world1.visited, new ArrayList<ICell>());
+    t.checkExpect(world1.engine.waveSize(), 1);
+    t.checkExpect(world1.engine.wave.cells[0], 0);
+    t.checkExpect(world1.engine.floodedCount, 1);
     t.checkExpect(world1.gameOver, false);
     t.checkExpect(world1.allFlooded, false);
 
@@ -1092,11 +2349,11 @@ class ExamplesFloodIt {
     // test the reset method
     t.checkExpect(world2.colors.size(), 5);
     t.checkExpect(world2.gameColors.size(), 3);
-    t.checkExpect(world2.attempts, 0);
+    t.checkExpect(world2.engine.attempts, 0);
     t.checkExpect(world2.board.get(0).flooded, true);
-    t.checkExpect(world2.toFlood,
-        new ArrayList<ICell>(Arrays.asList(world2.board.get(0))));
-    t.checkExpect(world2.visited, new ArrayList<ICell>());
+    t.checkExpect(world2.engine.waveSize(), 1);
+    t.checkExpect(world2.engine.wave.cells[0], 0);
+    t.checkExpect(world2.engine.floodedCount, 1);
     t.checkExpect(world2.gameOver, false);
     t.checkExpect(world2.allFlooded, false);
 
@@ -1106,10 +2363,11 @@ class ExamplesFloodIt {
     // test the reset method
     t.checkExpect(world3.colors.size(), 4);
     t.checkExpect(world3.gameColors.size(), 4);
-    t.checkExpect(world3.attempts, 0);
+    t.checkExpect(world3.engine.attempts, 0);
     t.checkExpect(world3.board.get(0).flooded, true);
-    t.checkExpect(world3.toFlood, new ArrayList<ICell>(Arrays.asList(world3.board.get(0))));
-    t.checkExpect(world3.visited, new ArrayList<ICell>());
+    t.checkExpect(world3.engine.waveSize(), 1);
+    t.checkExpect(world3.engine.wave.cells[0], 0);
+    t.checkExpect(world3.engine.floodedCount, 1);
     t.checkExpect(world3.gameOver, false);
     t.checkExpect(world3.allFlooded, false);
 
@@ -1119,10 +2377,11 @@ class ExamplesFloodIt {
     // test the reset method
     t.checkExpect(world4.colors.size(), 3);
     t.checkExpect(world4.gameColors.size(), 5);
-    t.checkExpect(world4.attempts, 0);
+    t.checkExpect(world4.engine.attempts, 0);
     t.checkExpect(world4.board.get(0).flooded, true);
-    t.checkExpect(world4.toFlood, new ArrayList<ICell>(Arrays.asList(world4.board.get(0))));
-    t.checkExpect(world4.visited, new ArrayList<ICell>());
+    t.checkExpect(world4.engine.waveSize(), 1);
+    t.checkExpect(world4.engine.wave.cells[0], 0);
+    t.checkExpect(world4.engine.floodedCount, 1);
     t.checkExpect(world4.gameOver, false);
     t.checkExpect(world4.allFlooded, false);
 
@@ -1132,10 +2391,11 @@ class ExamplesFloodIt {
     // test the reset method
     t.checkExpect(world5.colors.size(), 2);
     t.checkExpect(world5.gameColors.size(), 6);
-    t.checkExpect(world5.attempts, 0);
+    t.checkExpect(world5.engine.attempts, 0);
     t.checkExpect(world5.board.get(0).flooded, true);
-    t.checkExpect(world5.toFlood, new ArrayList<ICell>(Arrays.asList(world5.board.get(0))));
-    t.checkExpect(world5.visited, new ArrayList<ICell>());
+    t.checkExpect(world5.engine.waveSize(), 1);
+    t.checkExpect(world5.engine.wave.cells[0], 0);
+    t.checkExpect(world5.engine.floodedCount, 1);
     t.checkExpect(world5.gameOver, false);
     t.checkExpect(world5.allFlooded, false);
 
@@ -1145,10 +2405,11 @@ class ExamplesFloodIt {
     // test the reset method
     t.checkExpect(world6.colors.size(), 1);
     t.checkExpect(world6.gameColors.size(), 7);
-    t.checkExpect(world6.attempts, 0);
+    t.checkExpect(world6.engine.attempts, 0);
     t.checkExpect(world6.board.get(0).flooded, true);
-    t.checkExpect(world6.toFlood, new ArrayList<ICell>(Arrays.asList(world6.board.get(0))));
-    t.checkExpect(world6.visited, new ArrayList<ICell>());
+    t.checkExpect(world6.engine.waveSize(), 1);
+    t.checkExpect(world6.engine.wave.cells[0], 0);
+    t.checkExpect(world6.engine.floodedCount, 1);
     t.checkExpect(world6.gameOver, false);
     t.checkExpect(world6.allFlooded, false);
 
@@ -1158,10 +2419,11 @@ class ExamplesFloodIt {
     // test the reset method
     t.checkExpect(world7.colors.size(), 0);
     t.checkExpect(world7.gameColors.size(), 8);
-    t.checkExpect(world7.attempts, 0);
+    t.checkExpect(world7.engine.attempts, 0);
     t.checkExpect(world7.board.get(0).flooded, true);
-    t.checkExpect(world7.toFlood, new ArrayList<ICell>(Arrays.asList(world7.board.get(0))));
-    t.checkExpect(world7.visited, new ArrayList<ICell>());
+    t.checkExpect(world7.engine.waveSize(), 1);
+    t.checkExpect(world7.engine.wave.cells[0], 0);
+    t.checkExpect(world7.engine.floodedCount, 1);
     t.checkExpect(world7.gameOver, false);
     t.checkExpect(world7.allFlooded, false);
 
@@ -1500,6 +2762,22 @@ class ExamplesFloodIt {
         new ArrayList<Cell>(Arrays.asList(this.cell6, this.cell8)));
   }
 
+  // test that visiting the neighbors of a cell visits the cells getNeighbors lists
+  void testForEachNeighbor(Tester t) {
+    this.initWorldData();
+    for (Cell c : this.world3.board) {
+      NeighborList visited = new NeighborList();
+      c.forEachNeighbor(visited);
+      t.checkExpect(visited.cells, c.getNeighbors());
+    }
+    NeighborList none = new NeighborList();
+    new MtCell().forEachNeighbor(none);
+    new MtCell().visitAsNeighbor(none);
+    t.checkExpect(none.cells, new ArrayList<Cell>());
+    this.world3.board.get(0).visitAsNeighbor(none);
+    t.checkExpect(none.cells, new ArrayList<Cell>(Arrays.asList(this.world3.board.get(0))));
+  }
+
   // test isEmptyCell method
   void testIsEmptyCell(Tester t) {
     // examples are just for testing purposes and are not accurate to the game board layout
@@ -1521,45 +2799,755 @@ class ExamplesFloodIt {
     t.checkExpect(new MtCell().isEmptyCell(), true);
   }
 
+  // test that one wave of the flood only advances one ring per tick
+  void testOnTickWave(Tester t) {
+    // initialize world examples
+    this.initWorldData();
+
+    // every cell but the top left one has the second color
+    this.world2.engine.grid.clearFlooded();
+    for (int i = 0; i < this.world2.engine.grid.numCells; i++) {
+      this.world2.engine.grid.setColor(i, 1);
+    }
+    this.world2.engine.grid.setColor(0, 0);
+    this.world2.engine.grid.setFlooded(0);
+    this.world2.engine.recount();
+    this.world2.makeView();
+    this.world2.engine.stopWave();
+    this.world2.engine.startMove(1);
+    Color second = this.world2.gameColors.get(1);
+
+    // the move floods the whole board at once, in layers of 1, 2, ..., 6, ..., 1 cells
+    t.checkExpect(this.world2.engine.floodedCount, 36);
+    t.checkExpect(this.world2.engine.wave.layerCount, 11);
+    t.checkExpect(this.world2.engine.waveSize(), 1);
+
+    // the first ring only holds the top left cell
+    this.world2.onTick();
+    t.checkExpect(this.world2.board.get(0).color, second);
+    t.checkExpect(this.world2.engine.waveSize(), 2);
+    t.checkExpect(this.world2.board.get(1).flooded, false);
+
+    // the second ring shows the two cells next to it
+    this.world2.onTick();
+    t.checkExpect(this.world2.board.get(1).flooded, true);
+    t.checkExpect(this.world2.board.get(6).flooded, true);
+    t.checkExpect(this.world2.board.get(7).flooded, false);
+
+    // the farthest cell is 10 steps away, so it is the last layer left after 10 ticks
+    for (int i = 2; i < 10; i++) {
+      this.world2.onTick();
+    }
+    t.checkExpect(this.world2.engine.waveSize(), 1);
+    t.checkExpect(this.world2.engine.wave.cells[this.world2.engine.wave.layerStart[10]], 35);
+    t.checkExpect(this.world2.engine.wave.visited.cardinality(), 36);
+    t.checkExpect(this.world2.gameOver, false);
+    // every cell is flooded, so the next tick ends the game
+    this.world2.onTick();
+    t.checkExpect(this.world2.gameOver, true);
+    for (Cell c : this.world2.board) {
+      t.checkExpect(c.flooded, true);
+      t.checkExpect(c.color, second);
+    }
+  }
+
+  // test the grid behind the board
+  void testFloodItBoard(Tester t) {
+    FloodItBoard grid = new FloodItBoard(9);
+    t.checkExpect(grid.numCells, 81);
+    t.checkExpect(grid.flooded.length, 2);
+
+    // colors are stored per cell
+    grid.setColor(40, 7);
+    t.checkExpect(grid.getColor(40), 7);
+    t.checkExpect(grid.getColor(41), 0);
+
+    // neighbours are found by index arithmetic
+    t.checkExpect(grid.left(0), -1);
+    t.checkExpect(grid.top(0), -1);
+    t.checkExpect(grid.right(0), 1);
+    t.checkExpect(grid.bottom(0), 9);
+    t.checkExpect(grid.left(40), 39);
+    t.checkExpect(grid.top(40), 31);
+    t.checkExpect(grid.right(40), 41);
+    t.checkExpect(grid.bottom(40), 49);
+    t.checkExpect(grid.right(8), -1);
+    t.checkExpect(grid.left(9), -1);
+    t.checkExpect(grid.bottom(80), -1);
+
+    // flood state is one bit per cell
+    t.checkExpect(grid.isFlooded(70), false);
+    grid.setFlooded(70);
+    t.checkExpect(grid.isFlooded(70), true);
+    t.checkExpect(grid.isFlooded(6), false);
+    t.checkExpect(grid.allFlooded(), false);
+    for (int i = 0; i < grid.numCells; i++) {
+      grid.setFlooded(i);
+    }
+    t.checkExpect(grid.allFlooded(), true);
+    grid.clearFlooded();
+    t.checkExpect(grid.isFlooded(70), false);
+  }
+
+  // test starting a headless game
+  void testEngineNewGame(Tester t) {
+    t.checkConstructorException(
+        new IllegalArgumentException("You must have between 2 and 16384 cells (inclusive)"),
+        "FloodItEngine", 1, 3, 7L);
+    t.checkConstructorException(
+        new IllegalArgumentException("You must have between 3 and 256 colors (inclusive)"),
+        "FloodItEngine", 10, 2, 7L);
+
+    FloodItEngine game = FloodItEngine.newGame(14, 5, 42L);
+    t.checkExpect(game.movesUsed(), 0);
+    t.checkExpect(game.maxAttempts, game.greedyMoves);
+    t.checkExpect(game.isSpreading(), false);
+    t.checkExpect(game.isLost(), false);
+    t.checkExpect(game.isFloodedAt(0, 0), true);
+
+    // the same seed gives the same board
+    FloodItEngine same = FloodItEngine.newGame(14, 5, 42L);
+    t.checkExpect(same.grid.colors, game.grid.colors);
+    t.checkExpect(same.grid.flooded, game.grid.flooded);
+
+    // every neighbor of the starting region has another color
+    for (int row = 0; row < 14; row++) {
+      for (int col = 0; col < 14; col++) {
+        boolean nextToRegion = (col > 0 && game.isFloodedAt(row, col - 1))
+            || (row > 0 && game.isFloodedAt(row - 1, col))
+            || (col < 13 && game.isFloodedAt(row, col + 1))
+            || (row < 13 && game.isFloodedAt(row + 1, col));
+        if (nextToRegion && !game.isFloodedAt(row, col)) {
+          t.checkExpect(game.colorAt(row, col) == game.colorAt(0, 0), false);
+        }
+      }
+    }
+  }
+
+  // test applying whole moves to a headless game
+  void testEngineApplyMove(Tester t) {
+    // a 3 by 3 board in three stripes:
+    // 0 0 1
+    // 2 2 1
+    // 1 1 1
+    FloodItEngine game = new FloodItEngine(3, 3, 1L);
+    int[] stripes = {0, 0, 1, 2, 2, 1, 1, 1, 1};
+    for (int i = 0; i < 9; i++) {
+      game.grid.setColor(i, stripes[i]);
+    }
+    game.recount();
+    t.checkExpect(game.remaining(1), 5);
+    game.clickedColor = 0;
+    game.finishWave();
+    t.checkExpect(game.floodedCount, 2);
+    t.checkExpect(game.remaining(0), 0);
+    t.checkExpect(game.isFloodedAt(0, 1), true);
+    t.checkExpect(game.isFloodedAt(1, 0), false);
+
+    // flooding 2 takes the middle row
+    t.checkExpect(game.applyMove(2), 2);
+    t.checkExpect(game.movesUsed(), 1);
+    t.checkExpect(game.colorAt(0, 1), 2);
+    t.checkExpect(game.isFloodedAt(1, 1), true);
+    t.checkExpect(game.isWon(), false);
+
+    t.checkExpect(game.remaining(2), 0);
+    t.checkExpect(game.floodedCount, 4);
+
+    // flooding 1 takes the rest of the board
+    t.checkExpect(game.applyMove(1), 5);
+    t.checkExpect(game.remaining(1), 0);
+    t.checkExpect(game.floodedCount, 9);
+    t.checkExpect(game.movesUsed(), 2);
+    t.checkExpect(game.isWon(), true);
+    t.checkExpect(game.colorAt(0, 0), 1);
+
+    // a move that floods nothing still counts
+    t.checkExpect(game.applyMove(0), 0);
+    t.checkExpect(game.movesUsed(), 3);
+    t.checkExpect(game.colorAt(2, 2), 0);
+
+    // the game is lost once every attempt is used up
+    game.attempts = game.maxAttempts;
+    t.checkExpect(game.isLost(), false);
+    game.applyMove(1);
+    t.checkExpect(game.isLost(), true);
+  }
+
+  // test that a whole move floods the same cells as the animated one
+  void testApplyMoveMatchesAnimation(Tester t) {
+    FloodItEngine instant = FloodItEngine.newGame(22, 7, 11L);
+    FloodItEngine animated = FloodItEngine.newGame(22, 7, 11L);
+    for (int move = 0; move < 30; move++) {
+      int color = (move * 3) % 7;
+      int before = animated.floodedCount;
+      animated.startMove(color);
+      animated.finishWave();
+      t.checkExpect(instant.applyMove(color), animated.floodedCount - before);
+      t.checkExpect(instant.grid.colors, animated.grid.colors);
+      t.checkExpect(instant.grid.flooded, animated.grid.flooded);
+      t.checkExpect(instant.remaining, animated.remaining);
+    }
+    t.checkExpect(instant.movesUsed(), 30);
+  }
+
+  // test clicking a world that floods the whole board at once
+  void testInstantMoves(Tester t) {
+    // initialize world examples
+    this.initWorldData();
+
+    this.world5.instantMoves = true;
+    this.world5.engine.finishWave();
+    // the first cell that is not flooded is next to the flooded region
+    int clicked = 0;
+    while (this.world5.engine.grid.isFlooded(clicked)) {
+      clicked++;
+    }
+    Cell c = this.world5.board.get(clicked);
+    this.world5.onMousePressed(new Posn(c.x, c.y));
+    t.checkExpect(this.world5.animating, false);
+    t.checkExpect(this.world5.engine.attempts, 1);
+    t.checkExpect(this.world5.engine.isSpreading(), false);
+    t.checkExpect(this.world5.board.get(0).color, c.color);
+    t.checkExpect(this.world5.board.get(clicked).flooded, true);
+  }
+
+  // test counting the flooded cells and the cells left of each color
+  void testEngineCounts(Tester t) {
+    FloodItEngine game = FloodItEngine.newGame(20, 6, 3L);
+    int flooded = 0;
+    int[] left = new int[6];
+    for (int i = 0; i < game.grid.numCells; i++) {
+      if (game.grid.isFlooded(i)) {
+        flooded++;
+      } else {
+        left[game.grid.getColor(i)]++;
+      }
+    }
+    t.checkExpect(game.floodedCount, flooded);
+    t.checkExpect(game.remaining, left);
+
+    // the counts follow the flood
+    int color = (game.grid.getColor(0) + 1) % 6;
+    int before = game.remaining(color);
+    int captured = game.applyMove(color);
+    t.checkExpect(game.floodedCount, flooded + captured);
+    t.checkExpect(game.remaining(color), before - captured);
+
+    // flooding a flooded cell changes nothing
+    game.flood(0);
+    t.checkExpect(game.floodedCount, flooded + captured);
+  }
+
+  // test that the world hears about the cells the engine changes
+  void testCellChanged(Tester t) {
+    // initialize world examples
+    this.initWorldData();
+
+    this.world3.engine.grid.setColor(55, 2);
+    this.world3.cellChanged(55);
+    t.checkExpect(this.world3.board.get(55).color, this.world3.gameColors.get(2));
+    this.world3.engine.grid.setFlooded(55);
+    this.world3.cellChanged(55);
+    t.checkExpect(this.world3.board.get(55).flooded, true);
+    t.checkExpect(this.world3.engine.listener, this.world3);
+  }
+
   // test the onTick method
   void testOnTick(Tester t) {
     // initialize world examples
     this.initWorldData();
 
     // world 1
-    this.world1.clickedColor = Color.CYAN;
+    this.world1.engine.clickedColor = 2;
     this.world1.onTick();
-    t.checkExpect(this.world1.board.get(0).color, Color.CYAN);
+    t.checkExpect(this.world1.engine.grid.getColor(0), 2);
+    t.checkExpect(this.world1.board.get(0).color, this.world1.gameColors.get(2));
 
     // world 2
-    this.world2.clickedColor = Color.GREEN;
+    this.world2.engine.clickedColor = 1;
     this.world2.onTick();
-    t.checkExpect(this.world2.board.get(0).color, Color.GREEN);
-
+    t.checkExpect(this.world2.engine.grid.getColor(0), 1);
+    t.checkExpect(this.world2.board.get(0).color, this.world2.gameColors.get(1));
 
     // world 3
-    this.world3.clickedColor = Color.RED;
+    this.world3.engine.clickedColor = 3;
     this.world3.onTick();
-    t.checkExpect(this.world3.board.get(0).color, Color.RED);
+    t.checkExpect(this.world3.engine.grid.getColor(0), 3);
+    t.checkExpect(this.world3.board.get(0).color, this.world3.gameColors.get(3));
 
     // world 4
-    this.world4.clickedColor = Color.BLUE;
+    this.world4.engine.clickedColor = 4;
     this.world4.onTick();
-    t.checkExpect(this.world4.board.get(0).color, Color.BLUE);
+    t.checkExpect(this.world4.engine.grid.getColor(0), 4);
+    t.checkExpect(this.world4.board.get(0).color, this.world4.gameColors.get(4));
 
     // world 5
-    this.world5.clickedColor = Color.YELLOW;
+    this.world5.engine.clickedColor = 5;
     this.world5.onTick();
-    t.checkExpect(this.world5.board.get(0).color, Color.YELLOW);
+    t.checkExpect(this.world5.engine.grid.getColor(0), 5);
+    t.checkExpect(this.world5.board.get(0).color, this.world5.gameColors.get(5));
 
     // world 6
-    this.world6.clickedColor = Color.MAGENTA;
+    this.world6.engine.clickedColor = 6;
     this.world6.onTick();
-    t.checkExpect(this.world6.board.get(0).color, Color.MAGENTA);
+    t.checkExpect(this.world6.engine.grid.getColor(0), 6);
+    t.checkExpect(this.world6.board.get(0).color, this.world6.gameColors.get(6));
 
     // world 7
-    this.world7.clickedColor = Color.ORANGE;
+    this.world7.engine.clickedColor = 7;
     this.world7.onTick();
-    t.checkExpect(this.world7.board.get(0).color, Color.ORANGE);
+    t.checkExpect(this.world7.engine.grid.getColor(0), 7);
+    t.checkExpect(this.world7.board.get(0).color, this.world7.gameColors.get(7));
+  }
+
+  // test that the seeded random numbers are those of a SplittableRandom
+  void testSeededRandom(Tester t) {
+    SeededRandom rand = new SeededRandom(12345L);
+    SplittableRandom expected = new SplittableRandom(12345L);
+    for (int i = 0; i < 10; i++) {
+      t.checkExpect(rand.nextLong(), expected.nextLong());
+    }
+    rand.setSeed(12345L);
+    t.checkExpect(rand.nextLong(), new SplittableRandom(12345L).nextLong());
+    for (int i = 0; i < 100; i++) {
+      int n = rand.nextInt(5);
+      t.checkExpect(n >= 0 && n < 5, true);
+    }
+  }
+
+  // test the palette of games with more than the 8 classic colors
+  void testExtendPalette(Tester t) {
+    FloodItWorld classic = new FloodItWorld(4, 5, false, 1L);
+    t.checkExpect(classic.palette.length, 8);
+    t.checkExpect(FloodItWorld.extendPalette(classic.palette, 5) == classic.palette, true);
+    Color[] palette = FloodItWorld.extendPalette(classic.palette, 256);
+    t.checkExpect(palette.length, 256);
+    for (int i = 0; i < 8; i++) {
+      t.checkExpect(palette[i], classic.palette[i]);
+    }
+    HashSet<Integer> rgb = new HashSet<Integer>();
+    for (Color c : palette) {
+      rgb.add(c.getRGB());
+    }
+    t.checkExpect(rgb.size(), 256);
+
+    // the generated colors are the same for every world
+    FloodItWorld world = new FloodItWorld(10, 40, false, 1L);
+    t.checkExpect(world.palette.length, 40);
+    t.checkExpect(world.palette[39], palette[39]);
+    t.checkExpect(world.colors.size(), 0);
+    t.checkExpect(world.gameColors.size(), 40);
+    t.checkExpect(world.cellImages.size(), 40);
+  }
+
+  // test games of up to 256 colors, whose palette indices don't fit a signed byte
+  void testManyColors(Tester t) {
+    FloodItEngine engine = new FloodItEngine(26, 256, 3L);
+    boolean highIndex = false;
+    for (int i = 0; i < engine.grid.numCells; i++) {
+      int c = engine.grid.getColor(i);
+      t.checkExpect(c >= 0 && c < 256, true);
+      highIndex = highIndex || c >= 128;
+    }
+    t.checkExpect(highIndex, true);
+    t.checkExpect(engine.maxAttempts, engine.greedyMoves);
+    t.checkExpect(engine.maxAttempts >= engine.minMoves, true);
+
+    // flood the cell to the right of the corner by its color
+    int color = engine.grid.getColor(1);
+    engine.applyMove(color);
+    t.checkExpect(engine.grid.getColor(0), color);
+    t.checkExpect(engine.isFloodedAt(0, 1), true);
+
+    FloodItWorld world = new FloodItWorld(12, 256, false, 5L);
+    world.engine.applyMove(255);
+    world.refreshView();
+    t.checkExpect(world.board.get(0).color, world.gameColors.get(255));
+    t.checkExpect(world.makeScene() != null, true);
+  }
+
+  // test that resetting keeps the cells and lists of the world and only recolors them
+  void testResetInPlace(Tester t) {
+    FloodItWorld world = new FloodItWorld(10, 5, false, 3L);
+    ArrayList<Cell> board = world.board;
+    Cell first = world.board.get(0);
+    ArrayList<Color> gameColors = world.gameColors;
+    byte[] grid = world.engine.grid.colors;
+    world.makeScene();
+    world.reset(4L);
+
+    t.checkExpect(world.board == board, true);
+    t.checkExpect(world.board.get(0) == first, true);
+    t.checkExpect(world.gameColors == gameColors, true);
+    t.checkExpect(world.engine.grid.colors == grid, true);
+    t.checkExpect(world.colors.size(), 3);
+    t.checkExpect(world.gameColors.size(), 5);
+
+    // the same game as a new world of the same seed
+    FloodItWorld fresh = new FloodItWorld(10, 5, false, 4L);
+    t.checkExpect(world.gameColors, fresh.gameColors);
+    t.checkExpect(world.engine.grid.colors, fresh.engine.grid.colors);
+    for (int i = 0; i < 100; i++) {
+      t.checkExpect(world.board.get(i).color, fresh.board.get(i).color);
+      t.checkExpect(world.board.get(i).flooded, fresh.board.get(i).flooded);
+    }
+
+    // the cells that changed color are painted over the last frame
+    t.checkExpect(world.dirty.isEmpty(), false);
+    t.checkExpect(world.makeScene() != null, true);
+    t.checkExpect(world.dirty.isEmpty(), true);
+  }
+
+  // test that once warmed up, resetting allocates nothing
+  void testResetAllocatesNothing(Tester t) {
+    java.lang.management.ThreadMXBean threads =
+        java.lang.management.ManagementFactory.getThreadMXBean();
+    if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+      return;
+    }
+    com.sun.management.ThreadMXBean counter = (com.sun.management.ThreadMXBean) threads;
+    long thread = Thread.currentThread().getId();
+
+    FloodItWorld world = new FloodItWorld(26, 8, false, 5L);
+    for (int i = 0; i < 1000; i++) {
+      world.reset();
+    }
+    long before = counter.getThreadAllocatedBytes(thread);
+    for (int i = 0; i < 100; i++) {
+      world.reset();
+    }
+    t.checkExpect(counter.getThreadAllocatedBytes(thread) - before, 0L);
+  }
+
+  // the color of some cell that is not flooded yet, found without allocating
+  int unfloodedColor(FloodItEngine engine) {
+    for (int i = 0; i < engine.grid.numCells; i++) {
+      if (!engine.grid.isFlooded(i)) {
+        return engine.grid.getColor(i);
+      }
+    }
+    return engine.grid.getColor(0);
+  }
+
+  // where to click on the first cell of the view that is not flooded
+  Posn unfloodedCell(FloodItWorld world) {
+    for (int i = 0; i < world.board.size(); i++) {
+      Cell c = world.board.get(i);
+      if (!c.flooded) {
+        return new Posn(c.x, c.y);
+      }
+    }
+    return new Posn(0, 0);
+  }
+
+  // play whole games one tick at a time, returning the bytes this thread
+  // allocated while ticking
+  long tickGames(FloodItWorld world, int games,
+      com.sun.management.ThreadMXBean counter, long thread) {
+    long allocated = 0;
+    for (int g = 0; g < games; g++) {
+      world.reset();
+      while (!world.gameOver) {
+        if (!world.engine.isSpreading()) {
+          world.engine.startMove(this.unfloodedColor(world.engine));
+        }
+        long before = counter.getThreadAllocatedBytes(thread);
+        world.onTick();
+        allocated += counter.getThreadAllocatedBytes(thread) - before;
+      }
+    }
+    return allocated;
+  }
+
+  // test that once warmed up, a whole game of ticks allocates nothing
+  void testTickAllocatesNothing(Tester t) {
+    java.lang.management.ThreadMXBean threads =
+        java.lang.management.ManagementFactory.getThreadMXBean();
+    if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+      return;
+    }
+    com.sun.management.ThreadMXBean counter = (com.sun.management.ThreadMXBean) threads;
+    long thread = Thread.currentThread().getId();
+
+    FloodItWorld world = new FloodItWorld(26, 8, false, 11L);
+    this.tickGames(world, 50, counter, thread);
+    t.checkExpect(this.tickGames(world, 5, counter, thread), 0L);
+
+    // and on a large board
+    FloodItWorld large = new FloodItWorld(200, 4, true, 11L);
+    this.tickGames(large, 3, counter, thread);
+    t.checkExpect(this.tickGames(large, 1, counter, thread), 0L);
+
+    // visiting neighbors allocates nothing either
+    NeighborList visited = new NeighborList();
+    visited.cells.ensureCapacity(4 * world.board.size());
+    long before = counter.getThreadAllocatedBytes(thread);
+    for (int i = 0; i < world.board.size(); i++) {
+      world.board.get(i).forEachNeighbor(visited);
+    }
+    t.checkExpect(counter.getThreadAllocatedBytes(thread) - before, 0L);
+  }
+
+  // test that ticks do nothing between moves, and that the world says so
+  void testQuiescent(Tester t) {
+    FloodItWorld world = new FloodItWorld(14, 4, false, 6L);
+    FloodItMetrics.shared.clear();
+
+    // the region of the top left cell is still being flooded
+    t.checkExpect(world.isQuiescent(), false);
+    while (!world.isQuiescent()) {
+      world.onTick();
+    }
+    long ticks = FloodItMetrics.shared.ticks.sum();
+    world.makeScene();
+    byte[] colors = world.engine.grid.colors.clone();
+    for (int i = 0; i < 20; i++) {
+      world.onTick();
+    }
+    t.checkExpect(FloodItMetrics.shared.ticks.sum(), ticks);
+    t.checkExpect(world.engine.grid.colors, colors);
+    t.checkExpect(world.dirty.isEmpty(), true);
+    t.checkExpect(world.animating, false);
+
+    // a click wakes the world up until its wave stops, which ends the move
+    world.onMousePressed(this.unfloodedCell(world));
+    t.checkExpect(world.isQuiescent(), false);
+    t.checkExpect(world.animating, true);
+    while (!world.isQuiescent()) {
+      world.onTick();
+    }
+    t.checkExpect(world.animating, false);
+    t.checkExpect(world.moveInFlight, false);
+    t.checkExpect(FloodItMetrics.shared.moves.sum(), 1L);
+
+    // an engine on its own does nothing between moves either
+    colors = world.engine.grid.colors.clone();
+    world.engine.step();
+    t.checkExpect(world.engine.grid.colors, colors);
+    t.checkExpect(world.engine.isSpreading(), false);
+  }
+
+  // test that a move is worked out when it is made, and its ticks only recolor
+  // one layer each
+  void testMoveLayers(Tester t) {
+    FloodItEngine engine = FloodItEngine.newGame(14, 4, 8L);
+    FloodItEngine expected = FloodItEngine.newGame(14, 4, 8L);
+    int color = (engine.grid.getColor(0) + 1) % 4;
+    int captured = expected.applyMove(color);
+
+    engine.startMove(color);
+    t.checkExpect(engine.captured, captured);
+    t.checkExpect(engine.floodedCount, expected.floodedCount);
+    t.checkExpect(engine.grid.flooded, expected.grid.flooded);
+    t.checkExpect(engine.remaining, expected.remaining);
+
+    // every flooded cell is in exactly one layer, and has a neighbor in the
+    // layer before it
+    t.checkExpect(engine.wave.layerStart[engine.wave.layerCount], engine.floodedCount);
+    t.checkExpect(engine.wave.layerStart[1], 1);
+    int[] layerOf = new int[engine.grid.numCells];
+    Arrays.fill(layerOf, -1);
+    int shown = 0;
+    int flooded = 0;
+    for (int k = 0; k < engine.wave.layerCount; k++) {
+      int size = engine.waveSize();
+      t.checkExpect(size, engine.wave.layerStart[k + 1] - engine.wave.layerStart[k]);
+      for (int i = engine.wave.layerStart[k]; i < engine.wave.layerStart[k + 1]; i++) {
+        int index = engine.wave.cells[i];
+        t.checkExpect(layerOf[index], -1);
+        layerOf[index] = k;
+        int[] around = {engine.grid.left(index), engine.grid.top(index),
+            engine.grid.right(index), engine.grid.bottom(index)};
+        boolean reached = k == 0;
+        for (int n : around) {
+          reached = reached || (n >= 0 && layerOf[n] == k - 1);
+        }
+        t.checkExpect(reached, true);
+      }
+      flooded += engine.step();
+      shown += size;
+    }
+    t.checkExpect(shown, engine.floodedCount);
+    t.checkExpect(flooded, captured);
+    t.checkExpect(engine.isSpreading(), false);
+    t.checkExpect(engine.grid.colors, expected.grid.colors);
+  }
+
+  // test that a world shows a winning move to the end before the game is over
+  void testWinShown(Tester t) {
+    FloodItWorld world = new FloodItWorld(2, 3, false, 1L);
+    while (!world.isQuiescent()) {
+      world.onTick();
+    }
+    while (!world.gameOver) {
+      world.onMousePressed(this.unfloodedCell(world));
+      t.checkExpect(world.gameOver, false);
+      while (!world.isQuiescent()) {
+        world.onTick();
+      }
+    }
+    t.checkExpect(world.allFlooded, true);
+    for (Cell c : world.board) {
+      t.checkExpect(c.color, world.board.get(0).color);
+      t.checkExpect(c.flooded, true);
+    }
+  }
+
+  // the first cell of the view that is not flooded and not of the given color
+  int unfloodedCellNot(FloodItWorld world, int color) {
+    for (int i = 0; i < world.board.size(); i++) {
+      int index = world.viewIndex[i];
+      if (!world.engine.grid.isFlooded(index) && world.engine.grid.getColor(index) != color) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  // a cell of the view of the given color that isn't flooded, or -1 if there is none
+  int unfloodedCellOf(FloodItWorld world, int color) {
+    for (int i = 0; i < world.board.size(); i++) {
+      int index = world.viewIndex[i];
+      if (!world.engine.grid.isFlooded(index) && world.engine.grid.getColor(index) == color) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  // click the given cell of the view
+  void click(FloodItWorld world, int viewCell) {
+    Cell c = world.board.get(viewCell);
+    world.onMousePressed(new Posn(c.x, c.y));
+  }
+
+  // test that clicks during a wave are queued and made one after another
+  void testQueuedMoves(Tester t) {
+    FloodItWorld world = new FloodItWorld(14, 5, false, 21L);
+    FloodItWorld expected = new FloodItWorld(14, 5, false, 21L);
+    while (!world.isQuiescent()) {
+      world.onTick();
+    }
+    expected.engine.finishWave();
+
+    // the first click starts a wave, the next ones wait for it
+    int color = world.engine.clickedColor;
+    int[] moves = new int[5];
+    for (int i = 0; i < 5; i++) {
+      int cell = this.unfloodedCellNot(world, color);
+      color = world.engine.grid.getColor(world.viewIndex[cell]);
+      moves[i] = color;
+      this.click(world, cell);
+      t.checkExpect(world.animating, true);
+      t.checkExpect(world.queuedCount, Math.min(i, 4));
+    }
+    t.checkExpect(world.engine.attempts, 1);
+    t.checkExpect(world.queuedColors, new int[] {moves[1], moves[2], moves[3], moves[4]});
+
+    // a click on a full queue is dropped
+    int cell = this.unfloodedCellNot(world, moves[4]);
+    this.click(world, cell);
+    t.checkExpect(world.queuedCount, 4);
+
+    while (!world.isQuiescent()) {
+      world.onTick();
+    }
+    t.checkExpect(world.queuedCount, 0);
+    t.checkExpect(world.planning, null);
+    t.checkExpect(world.engine.attempts, 5);
+    for (int c : moves) {
+      expected.engine.applyMove(c);
+    }
+    t.checkExpect(world.engine.grid.colors, expected.engine.grid.colors);
+    t.checkExpect(world.engine.grid.flooded, expected.engine.grid.flooded);
+    t.checkExpect(world.engine.remaining, expected.engine.remaining);
+    for (int i = 0; i < world.board.size(); i++) {
+      t.checkExpect(world.board.get(i).color, expected.board.get(i).color);
+    }
+  }
+
+  // test the clicks that aren't queued, and that a reset forgets the queue
+  void testQueueDropped(Tester t) {
+    FloodItWorld world = new FloodItWorld(14, 5, false, 22L);
+    while (!world.isQuiescent()) {
+      world.onTick();
+    }
+    int first = this.unfloodedCellNot(world, world.engine.clickedColor);
+    int color = world.engine.grid.getColor(world.viewIndex[first]);
+    this.click(world, first);
+
+    // a click of the color the board is turning is already made
+    for (int i = 0; i < world.board.size(); i++) {
+      int index = world.viewIndex[i];
+      if (!world.engine.grid.isFlooded(index) && world.engine.grid.getColor(index) == color) {
+        this.click(world, i);
+        break;
+      }
+    }
+    t.checkExpect(world.queuedCount, 0);
+
+    // and so is a click of the color of the last queued move
+    int second = this.unfloodedCellNot(world, color);
+    this.click(world, second);
+    this.click(world, second);
+    t.checkExpect(world.queuedCount, 1);
+
+    world.reset(5L);
+    t.checkExpect(world.queuedCount, 0);
+    t.checkExpect(world.planning, null);
+    t.checkExpect(world.engine.attempts, 0);
+  }
+
+  // test that a reset while a queued move is worked out starts the same game
+  // as a reset with nothing queued
+  void testResetWhilePlanning(Tester t) {
+    FloodItWorld world = new FloodItWorld(26, 6, false, 23L);
+    FloodItWorld expected = new FloodItWorld(26, 6, false, 23L);
+    while (!world.isQuiescent()) {
+      world.onTick();
+    }
+    int first = this.unfloodedCellNot(world, world.engine.clickedColor);
+    this.click(world, first);
+    int color = world.engine.grid.getColor(world.viewIndex[first]);
+    this.click(world, this.unfloodedCellNot(world, color));
+    t.checkExpect(world.queuedCount, 1);
+    t.checkExpect(world.planning != null, true);
+
+    world.reset(6L);
+    expected.reset(6L);
+    t.checkExpect(world.queuedCount, 0);
+    t.checkExpect(world.planning, null);
+    t.checkExpect(world.engine.attempts, 0);
+    t.checkExpect(world.engine.grid.colors, expected.engine.grid.colors);
+    t.checkExpect(world.engine.grid.flooded, expected.engine.grid.flooded);
+    t.checkExpect(world.engine.remaining, expected.engine.remaining);
+
+    // and the next move is made on the new board
+    while (!world.isQuiescent()) {
+      world.onTick();
+    }
+    expected.engine.finishWave();
+    int next = this.unfloodedCellNot(world, world.engine.clickedColor);
+    this.click(world, next);
+    while (!world.isQuiescent()) {
+      world.onTick();
+    }
+    expected.engine.applyMove(world.engine.grid.getColor(world.viewIndex[next]));
+    t.checkExpect(world.engine.grid.colors, expected.engine.grid.colors);
+    t.checkExpect(world.engine.grid.flooded, expected.engine.grid.flooded);
+    t.checkExpect(world.engine.remaining, expected.engine.remaining);
+  }
+
+  // test that a game ended by an instant move is over without another tick
+  void testInstantGameOver(Tester t) {
+    FloodItWorld world = new FloodItWorld(2, 3, false, 1L);
+    world.instantMoves = true;
+    for (int c : new FloodItSolver(world.engine).greedy()) {
+      this.click(world, this.unfloodedCellOf(world, c));
+    }
+    t.checkExpect(world.gameOver, true);
+    t.checkExpect(world.allFlooded, true);
+    t.checkExpect(world.isQuiescent(), true);
   }
 }
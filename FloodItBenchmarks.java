@@ -0,0 +1,441 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+// A benchmark of one hot path of the game, timed on a fresh world of a given
+// size and number of colors
+abstract class ABenchmark {
+  // the name shown in the report
+  String name;
+
+  // the world being measured
+  FloodItWorld world;
+
+  ABenchmark(String name) {
+    this.name = name;
+  }
+
+  // build the world to measure; not timed
+  void setup(int size, int numColors) {
+    this.world = BenchmarkRunner.newWorld(size, numColors);
+  }
+
+  // get ready for the next operation; not timed
+  void prepare() {
+    return;
+  }
+
+  // one timed operation
+  abstract void run();
+}
+
+// measures building a world from scratch
+class ConstructBenchmark extends ABenchmark {
+  int size;
+  int numColors;
+
+  ConstructBenchmark() {
+    super("construct");
+  }
+
+  void setup(int size, int numColors) {
+    this.size = size;
+    this.numColors = numColors;
+  }
+
+  void run() {
+    this.world = BenchmarkRunner.newWorld(this.size, this.numColors);
+  }
+}
+
+// measures pressing "r"
+class ResetBenchmark extends ABenchmark {
+  ResetBenchmark() {
+    super("reset");
+  }
+
+  void run() {
+    this.world.reset();
+  }
+}
+
+// measures a whole move, animated by calling onTick until the wave stops
+class FloodBenchmark extends ABenchmark {
+  FloodBenchmark() {
+    super("onTick.flood");
+  }
+
+  // pick a color that is not the flooded one, so every move spreads, and start
+  // over before the game ends, or once the world has ended a game that can't
+  // be won, so onTick never stops early
+  void prepare() {
+    FloodItEngine engine = this.world.engine;
+    engine.finishWave();
+    if (this.world.gameOver || engine.isWon() || engine.attempts >= engine.maxAttempts) {
+      this.world.reset();
+      engine.finishWave();
+    }
+    engine.startMove((engine.grid.getColor(0) + 1) % engine.numColors);
+  }
+
+  void run() {
+    FloodItEngine engine = this.world.engine;
+    while (engine.isSpreading() && !this.world.gameOver) {
+      this.world.onTick();
+    }
+  }
+}
+
+// measures an instant move on an engine without a world, as a bot or a solver
+// plays, flooding either cell by cell or by bit planes
+class InstantMoveBenchmark extends ABenchmark {
+  FloodItEngine engine;
+
+  boolean bitboard;
+
+  InstantMoveBenchmark(String name, boolean bitboard) {
+    super(name);
+    this.bitboard = bitboard;
+  }
+
+  void setup(int size, int numColors) {
+    this.engine = FloodItEngine.newGame(size, numColors, 1L);
+    this.engine.useBitboard(this.bitboard);
+  }
+
+  // start over before the game ends, so every move is one of a game in play
+  void prepare() {
+    if (this.engine.isWon() || this.engine.attempts >= this.engine.maxAttempts) {
+      this.engine.reset(this.engine.seed + 1);
+      this.engine.finishWave();
+    }
+  }
+
+  void run() {
+    this.engine.applyMove((this.engine.grid.getColor(0) + 1) % this.engine.numColors);
+  }
+}
+
+// measures checking for the end of the game
+class GameOverBenchmark extends ABenchmark {
+  GameOverBenchmark() {
+    super("isGameOver");
+  }
+
+  void run() {
+    this.world.isGameOver();
+  }
+}
+
+// measures asking every cell of the view for its neighbors
+class NeighborsBenchmark extends ABenchmark {
+  // keeps the neighbors alive so the calls are not optimized away
+  int found;
+
+  NeighborsBenchmark() {
+    super("getNeighbors");
+  }
+
+  void run() {
+    for (Cell c : this.world.board) {
+      this.found += c.getNeighbors().size();
+    }
+  }
+}
+
+// measures visiting the neighbors of every cell of the view
+class ForEachNeighborBenchmark extends ABenchmark {
+  // counts the neighbors so the calls are not optimized away
+  NeighborCounter counter = new NeighborCounter();
+
+  ForEachNeighborBenchmark() {
+    super("forEachNeighbor");
+  }
+
+  void run() {
+    for (int i = 0; i < this.world.board.size(); i++) {
+      this.world.board.get(i).forEachNeighbor(this.counter);
+    }
+  }
+}
+
+// counts the cells it visits
+class NeighborCounter implements ICellVisitor {
+  int count;
+
+  public void visit(Cell c) {
+    this.count++;
+  }
+}
+
+// measures playing back the journal of a whole game, played by always
+// flooding the color of the first cell not flooded yet
+class ReplayBenchmark extends ABenchmark {
+  MoveJournal journal = new MoveJournal();
+
+  JournalReplayer replayer = new JournalReplayer();
+
+  ReplayBenchmark() {
+    super("replay");
+  }
+
+  void setup(int size, int numColors) {
+    FloodItEngine engine = new FloodItEngine(size, numColors, 1L);
+    engine.recordMoves(this.journal);
+    engine.finishWave();
+    for (int i = 0; !engine.isWon(); i++) {
+      if (!engine.grid.isFlooded(i)) {
+        engine.applyMove(engine.grid.getColor(i));
+      }
+    }
+  }
+
+  void run() {
+    this.replayer.replay(this.journal);
+  }
+}
+
+// measures drawing one frame
+class SceneBenchmark extends ABenchmark {
+  SceneBenchmark() {
+    super("makeScene");
+  }
+
+  void run() {
+    this.world.makeScene();
+  }
+}
+
+// Runs every benchmark over a range of board sizes and color counts, reporting
+// the time and the bytes allocated per operation.
+//
+// Run with: java -cp javalib.jar:tester.jar:. BenchmarkRunner [name ...]
+// where the optional names pick which benchmarks to run.
+class BenchmarkRunner {
+  // board sizes up to 26 are drawn cell by cell, bigger ones are large boards
+  int[] sizes = {2, 6, 10, 14, 18, 22, 26, 100, 1000};
+
+  int[] numColors = {3, 4, 5, 6, 7, 8};
+
+  // how long to warm up and to measure each combination, in nanoseconds
+  long warmupNanos = 200000000L;
+  long measureNanos = 500000000L;
+
+  ArrayList<ABenchmark> benchmarks = new ArrayList<ABenchmark>(Arrays.asList(
+      new ConstructBenchmark(), new ResetBenchmark(), new FloodBenchmark(),
+      new GameOverBenchmark(), new NeighborsBenchmark(), new ForEachNeighborBenchmark(),
+      new ReplayBenchmark(), new SceneBenchmark(),
+      new InstantMoveBenchmark("applyMove", false),
+      new InstantMoveBenchmark("bitboardMove", true)));
+
+  // counts the bytes allocated by this thread, when the JVM can
+  ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+  // a world of the given size, using a large board when it does not fit the screen
+  static FloodItWorld newWorld(int size, int numColors) {
+    return new FloodItWorld(size, numColors, size > 26);
+  }
+
+  public static void main(String[] args) {
+    new BenchmarkRunner().runAll(new ArrayList<String>(Arrays.asList(args)));
+  }
+
+  // run the benchmarks with the given names, or all of them if none are given
+  void runAll(ArrayList<String> names) {
+    System.out.println(String.format("%-14s %6s %6s %14s %14s %10s",
+        "benchmark", "size", "colors", "ns/op", "B/op", "MB/s"));
+    for (ABenchmark b : this.benchmarks) {
+      if (!names.isEmpty() && !names.contains(b.name)) {
+        continue;
+      }
+      for (int size : this.sizes) {
+        for (int colors : this.numColors) {
+          this.measure(b, size, colors);
+        }
+      }
+    }
+  }
+
+  // warm up and then measure one benchmark on one board
+  void measure(ABenchmark b, int size, int colors) {
+    b.setup(size, colors);
+    this.loop(b, this.warmupNanos);
+    long[] timed = this.loop(b, this.measureNanos);
+
+    long ops = timed[0];
+    long nanos = timed[1];
+    long allocated = timed[2];
+    System.out.println(String.format("%-14s %6d %6d %14.1f %14s %10s",
+        b.name, size, colors, (double) nanos / ops,
+        allocated < 0 ? "n/a" : String.format("%.1f", (double) allocated / ops),
+        allocated < 0 ? "n/a" : String.format("%.1f", allocated / 1e6 / (nanos / 1e9))));
+  }
+
+  // run operations until the given time has been spent in them, returning the
+  // number of operations, the nanoseconds they took and the bytes they allocated
+  // (or -1 bytes if the JVM can't tell)
+  long[] loop(ABenchmark b, long budget) {
+    long ops = 0;
+    long nanos = 0;
+    long allocated = 0;
+    while (nanos < budget) {
+      b.prepare();
+      long allocatedBefore = this.allocatedBytes();
+      long start = System.nanoTime();
+      b.run();
+      nanos += System.nanoTime() - start;
+      allocated += this.allocatedBytes() - allocatedBefore;
+      ops++;
+    }
+    return new long[] {ops, nanos, this.allocatedBytes() < 0 ? -1 : allocated};
+  }
+
+  // bytes allocated by this thread so far, or -1 if the JVM can't tell
+  long allocatedBytes() {
+    if (this.threads instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean) this.threads)
+          .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    return -1;
+  }
+}
+
+// Runs the parallel solver on the boards of ExamplesFloodIt.initWorldData with
+// more and more workers, reporting how much faster each is than one worker:
+// by time when the search finishes, and by states per second when it runs out
+// of nodes first.
+//
+// Run with: java -cp javalib.jar:tester.jar:. SolverSpeedupRunner [maxNodes]
+class SolverSpeedupRunner {
+  int[] sizes = {2, 6, 10, 14, 18, 22, 26};
+
+  int[] numColors = {3, 3, 4, 5, 6, 7, 8};
+
+  // the most states one search may expand
+  long maxNodes;
+
+  SolverSpeedupRunner(long maxNodes) {
+    this.maxNodes = maxNodes;
+  }
+
+  public static void main(String[] args) {
+    new SolverSpeedupRunner(args.length > 0 ? Long.parseLong(args[0]) : 500000L).runAll();
+  }
+
+  // every board, with one worker and then twice as many until every core is used
+  void runAll() {
+    System.out.println(String.format("%6s %6s %8s %6s %9s %12s %10s %8s",
+        "size", "colors", "threads", "moves", "optimal", "nodes", "ms", "speedup"));
+    int cores = Runtime.getRuntime().availableProcessors();
+    for (int i = 0; i < this.sizes.length; i++) {
+      FloodItEngine engine = FloodItEngine.newGame(this.sizes[i], this.numColors[i], 1L);
+      RegionGraph graph = new RegionGraph(engine);
+      SolverResult first = null;
+      for (int threads = 1; threads <= cores; threads = threads == cores ? cores + 1
+          : Math.min(threads * 2, cores)) {
+        ParallelFloodItSolver search = new ParallelFloodItSolver(graph, threads, 22);
+        search.maxNodes = this.maxNodes;
+        SolverResult result = search.solve();
+        search.shutdown();
+        if (first == null) {
+          first = result;
+        }
+        System.out.println(String.format("%6d %6d %8d %6d %9s %12d %10.1f %8.2f",
+            this.sizes[i], this.numColors[i], threads, result.moves.length, result.optimal,
+            result.nodesExpanded, result.nanos / 1e6, this.speedup(first, result)));
+      }
+    }
+  }
+
+  // how much faster a search was than the one with one worker
+  double speedup(SolverResult first, SolverResult result) {
+    if (first.optimal && result.optimal) {
+      return (double) first.nanos / Math.max(1, result.nanos);
+    }
+    return ((double) result.nodesExpanded / Math.max(1, result.nanos))
+        / ((double) Math.max(1, first.nodesExpanded) / Math.max(1, first.nanos));
+  }
+}
+
+// Holds many games open on a GameServer at once and reports the round trip
+// time of a batch of moves, by percentile. Each of a few player threads takes
+// turns over its share of the open games.
+//
+// Run with: java -cp javalib.jar:tester.jar:. ServerLoadRunner [games] [rounds]
+class ServerLoadRunner {
+  // number of games held open at once
+  int games;
+
+  // number of batches of moves played in each game
+  int rounds;
+
+  // number of threads playing them
+  int players = 32;
+
+  ServerLoadRunner(int games, int rounds) {
+    this.games = games;
+    this.rounds = rounds;
+  }
+
+  public static void main(String[] args) throws Exception {
+    new ServerLoadRunner(args.length > 0 ? Integer.parseInt(args[0]) : 10000,
+        args.length > 1 ? Integer.parseInt(args[1]) : 20).run();
+  }
+
+  void run() throws Exception {
+    GameServer server = new GameServer(0);
+    GameClient[] clients = new GameClient[this.games];
+    for (int i = 0; i < this.games; i++) {
+      clients[i] = new GameClient(server.port());
+      clients[i].send("NEW 14 6 " + i);
+    }
+
+    // every player thread times its own batches, starting a new game when one ends
+    long[][] times = new long[this.players][];
+    Thread[] threads = new Thread[this.players];
+    for (int p = 0; p < this.players; p++) {
+      int player = p;
+      threads[p] = new Thread(() -> {
+        long[] mine = new long[this.rounds * (this.games / this.players + 1)];
+        int n = 0;
+        for (int round = 0; round < this.rounds; round++) {
+          for (int g = player; g < this.games; g += this.players) {
+            long start = System.nanoTime();
+            String answer = clients[g].moves(round % 6, (round + g) % 6, (round + 3) % 6);
+            mine[n++] = System.nanoTime() - start;
+            if (!answer.endsWith("PLAYING")) {
+              clients[g].send("NEW 14 6");
+            }
+          }
+        }
+        times[player] = Arrays.copyOf(mine, n);
+      });
+      threads[p].start();
+    }
+    long start = System.nanoTime();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    long nanos = System.nanoTime() - start;
+
+    long[] all = new long[0];
+    for (long[] mine : times) {
+      int from = all.length;
+      all = Arrays.copyOf(all, from + mine.length);
+      System.arraycopy(mine, 0, all, from, mine.length);
+    }
+    Arrays.sort(all);
+    System.out.println(String.format("%d games, %s, %d batches in %.1f s (%.0f batches/s)",
+        this.games, server.virtualThreads ? "virtual threads" : "thread pool", all.length,
+        nanos / 1e9, all.length / (nanos / 1e9)));
+    System.out.println(String.format("p50 %.1f us, p90 %.1f us, p99 %.1f us, max %.1f us",
+        all[all.length / 2] / 1e3, all[(int) (all.length * 0.9)] / 1e3,
+        all[(int) (all.length * 0.99)] / 1e3, all[all.length - 1] / 1e3));
+
+    for (GameClient client : clients) {
+      client.close();
+    }
+    server.close();
+  }
+}
@@ -0,0 +1,247 @@
+import tester.Tester;
+
+import java.util.Arrays;
+
+// The board as bit planes, one mask of 64 cells per word for every color, laid
+// out like the flood state of FloodItBoard. A move floods 64 cells at a time:
+// the cells just flooded are shifted one cell left, right, up and down, kept
+// where the plane of the clicked color has a cell that isn't flooded yet, and
+// the cells kept are flooded and shifted again until no more are kept.
+// Cells that aren't flooded never change color, so the planes only have to be
+// built when the board is colored.
+class BitboardFlood {
+  // size of the board
+  int size;
+
+  // total number of cells
+  int numCells;
+
+  // number of words in every mask
+  int words;
+
+  // the cells of each color, planes[c]
+  long[][] planes;
+
+  // every cell but those of the first column, and every cell but those of the
+  // last column, which a shift one cell right or left wraps into
+  long[] notFirstColumn;
+  long[] notLastColumn;
+
+  // the cells flooded by the last round of the current move, and those
+  // flooded by the round being worked out
+  long[] front;
+  long[] next;
+
+  // the most words every plane of a board may take together
+  static long maxWords = 1L << 24;
+
+  // the planes of a board of the given size and number of colors
+  BitboardFlood(int size, int numColors) {
+    this.size = size;
+    this.numCells = size * size;
+    this.words = (this.numCells + 63) >>> 6;
+    if ((long) numColors * this.words > BitboardFlood.maxWords) {
+      throw new IllegalArgumentException("The board is too big for bit planes");
+    }
+    this.planes = new long[numColors][this.words];
+    this.notFirstColumn = new long[this.words];
+    this.notLastColumn = new long[this.words];
+    for (int i = 0; i < this.numCells; i++) {
+      if (i % size != 0) {
+        this.notFirstColumn[i >>> 6] |= 1L << i;
+      }
+      if (i % size != size - 1) {
+        this.notLastColumn[i >>> 6] |= 1L << i;
+      }
+    }
+    this.front = new long[this.words];
+    this.next = new long[this.words];
+  }
+
+  // build the planes from the colors of the given grid
+  void load(FloodItBoard grid) {
+    for (long[] plane : this.planes) {
+      Arrays.fill(plane, 0L);
+    }
+    for (int i = 0; i < this.numCells; i++) {
+      this.planes[grid.getColor(i)][i >>> 6] |= 1L << i;
+    }
+  }
+
+  // the word of the given mask, or 0 past either end of it
+  long word(long[] mask, int w) {
+    return w < 0 || w >= this.words ? 0L : mask[w];
+  }
+
+  // flood every cell of the given color the flooded cells reach, setting their
+  // bits in the given flood state; returns the number of cells flooded
+  int flood(long[] flooded, int color) {
+    long[] plane = this.planes[color];
+    long[] front = this.front;
+    long[] next = this.next;
+    System.arraycopy(flooded, 0, front, 0, this.words);
+
+    // a shift by a row moves every bit rowWords words and rowBits bits over
+    int rowWords = this.size >>> 6;
+    int rowBits = this.size & 63;
+
+    // the front only lies in words lo .. hi, and a round can only reach a
+    // row further in either direction
+    int lo = 0;
+    int hi = this.words - 1;
+    int captured = 0;
+    while (lo <= hi) {
+      int from = Math.max(0, lo - rowWords - 1);
+      int to = Math.min(this.words - 1, hi + rowWords + 1);
+      int newLo = this.words;
+      int newHi = -1;
+      for (int w = from; w <= to; w++) {
+        long f = front[w];
+        long before = this.word(front, w - 1);
+        long after = this.word(front, w + 1);
+        long grown = ((f << 1) | (before >>> 63)) & this.notFirstColumn[w];
+        grown |= ((f >>> 1) | (after << 63)) & this.notLastColumn[w];
+        long above = this.word(front, w - rowWords);
+        long below = this.word(front, w + rowWords);
+        if (rowBits == 0) {
+          grown |= above | below;
+        } else {
+          grown |= (above << rowBits) | (this.word(front, w - rowWords - 1) >>> (64 - rowBits));
+          grown |= (below >>> rowBits) | (this.word(front, w + rowWords + 1) << (64 - rowBits));
+        }
+        long kept = grown & plane[w] & ~flooded[w];
+        next[w] = kept;
+        if (kept != 0) {
+          captured += Long.bitCount(kept);
+          newLo = Math.min(newLo, w);
+          newHi = w;
+        }
+      }
+
+      // flood what was kept and make it the front of the next round, clearing
+      // the words of the old front the new one doesn't cover
+      for (int w = from; w <= to; w++) {
+        flooded[w] |= next[w];
+      }
+      for (int w = lo; w <= hi; w++) {
+        front[w] = 0L;
+      }
+      if (newLo <= newHi) {
+        System.arraycopy(next, newLo, front, newLo, newHi - newLo + 1);
+      }
+      lo = newLo;
+      hi = newHi;
+    }
+    return captured;
+  }
+}
+
+class ExamplesFloodItBitboard {
+
+  // check that two engines are in the same state
+  void checkSame(Tester t, FloodItEngine actual, FloodItEngine expected) {
+    t.checkExpect(actual.grid.colors, expected.grid.colors);
+    t.checkExpect(actual.grid.flooded, expected.grid.flooded);
+    t.checkExpect(actual.floodedCount, expected.floodedCount);
+    t.checkExpect(actual.remaining, expected.remaining);
+    t.checkExpect(actual.captured, expected.captured);
+  }
+
+  // test the edge masks of a 3 by 3 board
+  void testColumns(Tester t) {
+    BitboardFlood bits = new BitboardFlood(3, 3);
+    t.checkExpect(bits.words, 1);
+    t.checkExpect(bits.notFirstColumn[0], 0b110110110L);
+    t.checkExpect(bits.notLastColumn[0], 0b011011011L);
+  }
+
+  // test flooding a small board whose regions wind around
+  void testFlood(Tester t) {
+    // 0 1 0 0
+    // 0 1 1 0
+    // 0 0 1 0
+    // 2 1 1 0
+    FloodItEngine engine = new FloodItEngine(4, 3, 1L);
+    int[] colors = {0, 1, 0, 0, 0, 1, 1, 0, 0, 0, 1, 0, 2, 1, 1, 0};
+    for (int i = 0; i < colors.length; i++) {
+      engine.grid.setColor(i, colors[i]);
+    }
+    engine.recount();
+    engine.clickedColor = 0;
+    engine.finishWave();
+    t.checkExpect(engine.floodedCount, 4);
+
+    BitboardFlood bits = new BitboardFlood(4, 3);
+    bits.load(engine.grid);
+    t.checkExpect(bits.planes[2][0], 1L << 12);
+    long[] flooded = engine.grid.flooded.clone();
+    t.checkExpect(bits.flood(flooded, 1), 6);
+    t.checkExpect(flooded[0], 0b0110011101110011L);
+    t.checkExpect(bits.flood(flooded, 1), 0);
+    t.checkExpect(bits.flood(flooded, 0), 5);
+    t.checkExpect(bits.flood(flooded, 2), 1);
+    t.checkExpect(flooded[0], 0xFFFFL);
+  }
+
+  // test that an engine flooding by bit planes plays every move like one
+  // flooding cell by cell, on boards whose rows cross words in every way
+  void testSameAsCells(Tester t) {
+    int[] sizes = {2, 3, 7, 8, 13, 26, 64, 65, 100};
+    for (int size : sizes) {
+      for (long seed = 0; seed < 4; seed++) {
+        int numColors = 3 + (int) (seed % 4);
+        FloodItEngine cells = new FloodItEngine(size, numColors, seed);
+        FloodItEngine bits = new FloodItEngine(size, numColors, seed);
+        bits.useBitboard(true);
+        for (int i = 0; i < 3 * size && !cells.isWon(); i++) {
+          int color = (int) ((seed * 7 + i * i) % numColors);
+          t.checkExpect(bits.applyMove(color), cells.applyMove(color));
+        }
+        this.checkSame(t, bits, cells);
+      }
+    }
+  }
+
+  // test that the planes follow the board when it is colored again
+  void testReset(Tester t) {
+    FloodItEngine cells = new FloodItEngine(20, 5, 1L);
+    FloodItEngine bits = new FloodItEngine(20, 5, 1L);
+    bits.useBitboard(true);
+    bits.applyMove(2);
+    bits.reset(9L);
+    cells.reset(9L);
+    for (int i = 0; i < 10; i++) {
+      t.checkExpect(bits.applyMove(i % 5), cells.applyMove(i % 5));
+    }
+    this.checkSame(t, bits, cells);
+
+    // and back to flooding cell by cell
+    bits.useBitboard(false);
+    t.checkExpect(bits.bitboard, null);
+    t.checkExpect(bits.applyMove(3), cells.applyMove(3));
+    this.checkSame(t, bits, cells);
+  }
+
+  // test that a world moving instantly by bit planes draws the same board
+  void testWorld(Tester t) {
+    FloodItWorld world = new FloodItWorld(14, 6, false, 3L);
+    FloodItWorld expected = new FloodItWorld(14, 6, false, 3L);
+    world.engine.useBitboard(true);
+    for (int i = 0; i < 6; i++) {
+      world.engine.applyMove(i);
+      expected.engine.applyMove(i);
+    }
+    world.makeScene();
+    for (int i = 0; i < world.board.size(); i++) {
+      t.checkExpect(world.board.get(i).color, expected.board.get(i).color);
+      t.checkExpect(world.board.get(i).flooded, expected.board.get(i).flooded);
+    }
+  }
+
+  // test that the planes of a board too big for them aren't made
+  void testTooBig(Tester t) {
+    t.checkConstructorException(
+        new IllegalArgumentException("The board is too big for bit planes"),
+        "BitboardFlood", 16384, 256);
+  }
+}
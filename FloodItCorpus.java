@@ -0,0 +1,132 @@
+import tester.Tester;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+// Many boards of one size and number of colors, generated in parallel from a
+// single seed and stored back to back as one palette index per cell. Board i
+// is colored exactly like a FloodItEngine made from seeds[i], so any board of
+// a corpus can be played again on its own.
+class BoardCorpus {
+  // number of boards
+  int count;
+
+  // size of every board
+  int size;
+
+  // number of colors of every board
+  int numColors;
+
+  // number of cells of every board
+  int numCells;
+
+  // the seed of each board
+  long[] seeds;
+
+  // palette index of every cell, board after board
+  byte[] colors;
+
+  // generate the given number of boards from the given seed, using every core
+  BoardCorpus(int count, int size, int numColors, long seed) {
+    if (numColors < 3 || numColors > 256) {
+      throw new IllegalArgumentException("You must have between 3 and 256 colors (inclusive)");
+    } else if (size < 2 || size > 16384) {
+      throw new IllegalArgumentException("You must have between 2 and 16384 cells (inclusive)");
+    } else if (count < 0 || (long) count * size * size > Integer.MAX_VALUE - 8) {
+      throw new IllegalArgumentException("A corpus holds at most "
+          + (Integer.MAX_VALUE - 8) + " cells");
+    }
+
+    this.count = count;
+    this.size = size;
+    this.numColors = numColors;
+    this.numCells = size * size;
+
+    // the seeds are drawn one after another so they don't depend on how the
+    // boards are shared out between the cores
+    this.seeds = new long[count];
+    SplittableRandom rand = new SplittableRandom(seed);
+    for (int i = 0; i < count; i++) {
+      this.seeds[i] = rand.nextLong();
+    }
+
+    this.colors = new byte[count * this.numCells];
+    IntStream.range(0, count).parallel().forEach(i -> FloodItBoard.fill(this.colors,
+        i * this.numCells, this.numCells, this.numColors, this.seeds[i]));
+  }
+
+  // the palette index of the cell at the given row and column of the given board
+  int colorAt(int board, int row, int col) {
+    return this.colors[(board * this.numCells) + (row * this.size) + col] & 0xFF;
+  }
+
+  // a new game on the given board
+  FloodItEngine engine(int board) {
+    return FloodItEngine.newGame(this.size, this.numColors, this.seeds[board]);
+  }
+}
+
+class ExamplesFloodItCorpus {
+
+  // test that the same seed, size and number of colors make the same world
+  void testSeededWorld(Tester t) {
+    FloodItWorld a = new FloodItWorld(10, 5, false, 42L);
+    FloodItWorld b = new FloodItWorld(10, 5, false, 42L);
+    t.checkExpect(a.gameColors, b.gameColors);
+    t.checkExpect(a.engine.grid.colors, b.engine.grid.colors);
+    t.checkExpect(a.engine.seed, b.engine.seed);
+
+    // and so do the games after a reset
+    a.reset();
+    b.reset();
+    t.checkExpect(a.gameColors, b.gameColors);
+    t.checkExpect(a.engine.grid.colors, b.engine.grid.colors);
+
+    // a reset to the seed of a world makes that world again
+    FloodItWorld c = new FloodItWorld(10, 5, false, 7L);
+    c.reset(a.seed);
+    t.checkExpect(c.gameColors, a.gameColors);
+    t.checkExpect(c.engine.grid.colors, a.engine.grid.colors);
+  }
+
+  // test that another seed makes another board
+  void testOtherSeed(Tester t) {
+    FloodItWorld a = new FloodItWorld(10, 5, false, 1L);
+    FloodItWorld b = new FloodItWorld(10, 5, false, 2L);
+    t.checkExpect(Arrays.equals(a.engine.grid.colors, b.engine.grid.colors), false);
+  }
+
+  // test that every board of a corpus is the board of its seed
+  void testCorpus(Tester t) {
+    BoardCorpus corpus = new BoardCorpus(50, 7, 4, 99L);
+    t.checkExpect(corpus.colors.length, 50 * 49);
+    for (int b = 0; b < corpus.count; b++) {
+      FloodItEngine engine = new FloodItEngine(7, 4, corpus.seeds[b]);
+      for (int row = 0; row < 7; row++) {
+        for (int col = 0; col < 7; col++) {
+          t.checkExpect(corpus.colorAt(b, row, col), engine.colorAt(row, col));
+        }
+      }
+    }
+    t.checkExpect(corpus.engine(3).colorAt(6, 6), corpus.colorAt(3, 6, 6));
+
+    // the same seed makes the same corpus
+    BoardCorpus again = new BoardCorpus(50, 7, 4, 99L);
+    t.checkExpect(again.seeds, corpus.seeds);
+    t.checkExpect(again.colors, corpus.colors);
+  }
+
+  // test the arguments a corpus won't take
+  void testIllegalCorpus(Tester t) {
+    t.checkConstructorException(
+        new IllegalArgumentException("You must have between 3 and 256 colors (inclusive)"),
+        "BoardCorpus", 1, 5, 257, 0L);
+    t.checkConstructorException(
+        new IllegalArgumentException("You must have between 2 and 16384 cells (inclusive)"),
+        "BoardCorpus", 1, 1, 3, 0L);
+    t.checkConstructorException(
+        new IllegalArgumentException("A corpus holds at most 2147483639 cells"),
+        "BoardCorpus", 10, 16384, 3, 0L);
+  }
+}
@@ -0,0 +1,471 @@
+import tester.Tester;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// How hard a board is, worked out again whenever it is colored. Two greedy
+// players play it on its regions, one flooding the most cells with every move
+// and one the most regions, and the fewer moves either needs is how many the
+// game allows, so every game can be won. The rings of regions around the flood
+// give a lower bound on the moves any player needs, the same one FloodItSolver
+// uses, which tells at any point of the game whether the moves left can still
+// flood the board. The greedy player by cells is the one FloodItSolver plays.
+//
+// An estimate is only scratch space: engines keep the answers, and borrow an
+// estimate from the ones shared by every engine for as long as they work a
+// board out. Once there are as many as boards are worked out at once, and
+// each is as big as the biggest board, estimating allocates nothing. Every
+// move floods whole regions of the board as it was colored, so an estimate
+// that still has the regions of a board only has to flood them again to
+// bound the moves left on it.
+class DifficultyEstimate {
+  // the regions of the board being estimated
+  RegionGraph graph;
+
+  // the FloodItEngine.boardId of the board the graph has the regions of, or 0
+  long loaded = 0;
+
+  // whether every region is flooded, bordering the flood or neither
+  byte[] state;
+  static final byte UNTOUCHED = 0;
+  static final byte BORDERING = 1;
+  static final byte FLOODED = 2;
+
+  // the regions bordering the flood, frontier[0 .. frontierCount)
+  int[] frontier;
+  int frontierCount = 0;
+
+  // regions waiting to be worked on
+  int[] queue;
+
+  // the ring of regions around the flood every region is in
+  int[] ring;
+
+  // per color: the regions that aren't flooded, those of them bordering the
+  // flood, what a move of it would flood, and the ring of its farthest region
+  int[] left;
+  int[] bordering;
+  int[] gain;
+  int[] farthest;
+
+  // the fewest moves a greedy player floods the board in
+  int greedyMoves = 0;
+
+  // no player floods the board in fewer moves than this
+  int minMoves = 0;
+
+  // the estimates no engine is using
+  static final AtomicReferenceArray<DifficultyEstimate> spare =
+      new AtomicReferenceArray<DifficultyEstimate>(2 * Runtime.getRuntime().availableProcessors());
+
+  // scratch for boards of up to the given number of cells and colors
+  DifficultyEstimate(int numCells, int numColors) {
+    this(new RegionGraph(numCells, numColors));
+  }
+
+  // scratch for playing on the regions of the given graph
+  DifficultyEstimate(RegionGraph graph) {
+    this.graph = graph;
+    this.allocate(Math.max(graph.capacity, graph.numRegions), graph.numColors);
+  }
+
+  // make the arrays for the given number of regions and colors
+  void allocate(int numRegions, int numColors) {
+    this.state = new byte[numRegions];
+    this.frontier = new int[numRegions];
+    this.queue = new int[numRegions];
+    this.ring = new int[numRegions];
+    this.left = new int[numColors];
+    this.bordering = new int[numColors];
+    this.gain = new int[numColors];
+    this.farthest = new int[numColors];
+  }
+
+  // an estimate no engine is using, for boards of up to the given number of
+  // cells and colors; it is given back once the board is worked out
+  static DifficultyEstimate borrow(int numCells, int numColors) {
+    for (int i = 0; i < DifficultyEstimate.spare.length(); i++) {
+      DifficultyEstimate estimate = DifficultyEstimate.spare.get(i);
+      if (estimate != null && DifficultyEstimate.spare.compareAndSet(i, estimate, null)) {
+        if (numCells > estimate.state.length || numColors > estimate.left.length) {
+          estimate.allocate(Math.max(numCells, estimate.state.length),
+              Math.max(numColors, estimate.left.length));
+        }
+        return estimate;
+      }
+    }
+    return new DifficultyEstimate(numCells, numColors);
+  }
+
+  // let another engine use this estimate; with every spare in use it is dropped
+  void giveBack() {
+    for (int i = 0; i < DifficultyEstimate.spare.length(); i++) {
+      if (DifficultyEstimate.spare.compareAndSet(i, null, this)) {
+        return;
+      }
+    }
+  }
+
+  // label the regions of the given grid, which has the given number of colors,
+  // unless the graph has them already; a board id of 0 is always labeled
+  void load(FloodItBoard grid, int numColors, long board) {
+    if (board == 0 || board != this.loaded) {
+      this.graph.load(grid, numColors);
+      this.loaded = board;
+    }
+  }
+
+  // estimate the given grid, which has the given number of colors and board
+  // id, from its flooded cells
+  void estimate(FloodItBoard grid, int numColors, long board) {
+    this.load(grid, numColors, board);
+    this.start(grid);
+    int byCells = this.playout(true, null);
+    this.start(grid);
+    int byRegions = this.playout(false, null);
+    this.greedyMoves = Math.min(byCells, byRegions);
+    this.start(grid);
+    this.minMoves = this.movesLeft();
+  }
+
+  // the fewest moves either greedy player floods the board in from the region
+  // of the top left cell
+  int greedyMoves() {
+    this.startAtTopLeft();
+    int byCells = this.playout(true, null);
+    this.startAtTopLeft();
+    return Math.min(byCells, this.playout(false, null));
+  }
+
+  // a lower bound on the moves left to flood the given grid, which has the
+  // given number of colors and board id
+  int movesLeft(FloodItBoard grid, int numColors, long board) {
+    this.load(grid, numColors, board);
+    this.start(grid);
+    return this.movesLeft();
+  }
+
+  // start with nothing flooded and nothing on the frontier
+  void clear() {
+    Arrays.fill(this.state, 0, this.graph.numRegions, DifficultyEstimate.UNTOUCHED);
+    Arrays.fill(this.left, 0, this.graph.numColors, 0);
+    Arrays.fill(this.bordering, 0, this.graph.numColors, 0);
+    for (int r = 0; r < this.graph.numRegions; r++) {
+      this.left[this.graph.regionColor[r]]++;
+    }
+    this.frontierCount = 0;
+  }
+
+  // flood the given region, unless it already is, as the given-th region
+  // flooded at the start; returns the number flooded
+  int startFlooded(int region, int flooded) {
+    if (this.state[region] == DifficultyEstimate.FLOODED) {
+      return flooded;
+    }
+    this.state[region] = DifficultyEstimate.FLOODED;
+    this.left[this.graph.regionColor[region]]--;
+    this.queue[flooded] = region;
+    return flooded + 1;
+  }
+
+  // flood the regions of the flooded cells of the given grid and put their
+  // neighbors on the frontier
+  void start(FloodItBoard grid) {
+    this.clear();
+    int flooded = 0;
+    for (int w = 0; w < grid.flooded.length; w++) {
+      long bits = grid.flooded[w];
+      while (bits != 0) {
+        flooded = this.startFlooded(
+            this.graph.regionOf[(w << 6) + Long.numberOfTrailingZeros(bits)], flooded);
+        bits &= bits - 1;
+      }
+    }
+    for (int i = 0; i < flooded; i++) {
+      this.border(this.queue[i]);
+    }
+  }
+
+  // flood only the region of the top left cell and put its neighbors on the frontier
+  void startAtTopLeft() {
+    this.clear();
+    this.startFlooded(0, 0);
+    this.border(0);
+  }
+
+  // put the neighbors of the given region that are neither flooded nor on the
+  // frontier yet on the frontier
+  void border(int region) {
+    RegionGraph graph = this.graph;
+    for (int i = graph.neighborStart[region]; i < graph.neighborStart[region + 1]; i++) {
+      int n = graph.neighbors[i];
+      if (this.state[n] == DifficultyEstimate.UNTOUCHED) {
+        this.state[n] = DifficultyEstimate.BORDERING;
+        this.bordering[graph.regionColor[n]]++;
+        this.frontier[this.frontierCount] = n;
+        this.frontierCount++;
+      }
+    }
+  }
+
+  // the color a greedy player plays next: one whose regions left all border
+  // the flood if there is one, since it is always worth playing first, and
+  // otherwise the one that floods the most cells or the most regions, the
+  // lowest of those tied
+  int choose(boolean byCells) {
+    int numColors = this.graph.numColors;
+    for (int c = 0; c < numColors; c++) {
+      if (this.bordering[c] > 0 && this.bordering[c] == this.left[c]) {
+        return c;
+      }
+    }
+    Arrays.fill(this.gain, 0, numColors, 0);
+    for (int i = 0; i < this.frontierCount; i++) {
+      int r = this.frontier[i];
+      this.gain[this.graph.regionColor[r]] += byCells ? this.graph.regionSize[r] : 1;
+    }
+    int best = 0;
+    for (int c = 1; c < numColors; c++) {
+      if (this.gain[c] > this.gain[best]) {
+        best = c;
+      }
+    }
+    return best;
+  }
+
+  // flood every region of the given color on the frontier
+  void play(int color) {
+    int kept = 0;
+    int flooded = 0;
+    for (int i = 0; i < this.frontierCount; i++) {
+      int r = this.frontier[i];
+      if (this.graph.regionColor[r] == color) {
+        this.state[r] = DifficultyEstimate.FLOODED;
+        this.queue[flooded] = r;
+        flooded++;
+      } else {
+        this.frontier[kept] = r;
+        kept++;
+      }
+    }
+    this.frontierCount = kept;
+    this.left[color] -= flooded;
+    this.bordering[color] = 0;
+
+    // regions of one color are never neighbors, so this only adds regions of
+    // other colors to the frontier
+    for (int i = 0; i < flooded; i++) {
+      this.border(this.queue[i]);
+    }
+  }
+
+  // the number of moves a greedy player makes from the start until the board
+  // is flooded, writing them into the given array unless it is null
+  int playout(boolean byCells, int[] moves) {
+    int count = 0;
+    while (this.frontierCount > 0) {
+      int color = this.choose(byCells);
+      if (moves != null) {
+        moves[count] = color;
+      }
+      this.play(color);
+      count++;
+    }
+    return count;
+  }
+
+  // a lower bound on the moves left from the start: the ring of the farthest
+  // region of every color, given to FloodItSolver.ringBound
+  int movesLeft() {
+    RegionGraph graph = this.graph;
+    Arrays.fill(this.farthest, 0, graph.numColors, 0);
+    int tail = 0;
+    for (int r = 0; r < graph.numRegions; r++) {
+      if (this.state[r] == DifficultyEstimate.FLOODED) {
+        this.ring[r] = 0;
+        this.queue[tail] = r;
+        tail++;
+      } else {
+        this.ring[r] = -1;
+      }
+    }
+    int rings = 0;
+    for (int head = 0; head < tail; head++) {
+      int r = this.queue[head];
+      for (int i = graph.neighborStart[r]; i < graph.neighborStart[r + 1]; i++) {
+        int n = graph.neighbors[i];
+        if (this.ring[n] < 0) {
+          this.ring[n] = this.ring[r] + 1;
+          this.queue[tail] = n;
+          tail++;
+          rings = this.ring[n];
+          this.farthest[graph.regionColor[n]] = rings;
+        }
+      }
+    }
+    return FloodItSolver.ringBound(this.farthest, graph.numColors, rings);
+  }
+}
+
+class ExamplesFloodItDifficulty {
+
+  // test the estimate of a board whose answer is known:
+  // 0 1 2
+  // 1 2 0
+  // 2 0 1
+  void testKnownBoard(Tester t) {
+    FloodItEngine engine = new FloodItEngine(3, 3, 1L);
+    int[] colors = {0, 1, 2, 1, 2, 0, 2, 0, 1};
+    for (int i = 0; i < 9; i++) {
+      engine.grid.setColor(i, colors[i]);
+    }
+    engine.recount();
+    DifficultyEstimate estimate = new DifficultyEstimate(9, 3);
+    estimate.estimate(engine.grid, 3, 0);
+    t.checkExpect(estimate.graph.numRegions, 9);
+    t.checkExpect(estimate.graph.degree(0), 2);
+    t.checkExpect(estimate.graph.degree(3), 3);
+    t.checkExpect(estimate.minMoves, 4);
+    t.checkExpect(estimate.greedyMoves, 4);
+
+    // flooding the first ring leaves three more
+    engine.clickedColor = 0;
+    engine.finishWave();
+    engine.applyMove(1);
+    t.checkExpect(estimate.movesLeft(engine.grid, 3, 0), 3);
+    t.checkExpect(engine.movesLeft(), 3);
+  }
+
+  // test that the estimate agrees with the region graph and the solver, and
+  // brackets the fewest moves
+  void testSameAsSolver(Tester t) {
+    for (long seed = 0; seed < 10; seed++) {
+      FloodItEngine engine = FloodItEngine.newGame(8, 4, seed);
+      DifficultyEstimate estimate = new DifficultyEstimate(64, 4);
+      estimate.estimate(engine.grid, 4, 0);
+      FloodItSolver solver = new FloodItSolver(engine);
+      t.checkExpect(estimate.graph.numRegions, solver.graph.numRegions);
+      t.checkExpect(Arrays.copyOf(estimate.graph.regionOf, 64), solver.graph.regionOf);
+      t.checkExpect(estimate.minMoves, solver.lowerBound(solver.start()));
+      t.checkExpect(engine.minMoves, estimate.minMoves);
+      estimate.start(engine.grid);
+      t.checkExpect(estimate.playout(true, null), solver.greedy().length);
+
+      int fewest = solver.solve().moves.length;
+      t.checkExpect(estimate.minMoves <= fewest, true);
+      t.checkExpect(fewest <= estimate.greedyMoves, true);
+      t.checkExpect(engine.maxAttempts, estimate.greedyMoves);
+    }
+  }
+
+  // test the lower bound part way through games against the solver's
+  void testMovesLeft(Tester t) {
+    for (long seed = 0; seed < 10; seed++) {
+      FloodItEngine engine = FloodItEngine.newGame(14, 6, seed);
+      for (int move = 0; move < 8; move++) {
+        engine.applyMove((int) ((seed + move * 5) % 6));
+        FloodItSolver solver = new FloodItSolver(engine);
+        t.checkExpect(engine.movesLeft(), solver.lowerBound(solver.start()));
+      }
+    }
+  }
+
+  // test that a game is known to be lost as soon as the moves left can't
+  // flood the board, before the attempts run out
+  void testCannotWin(Tester t) {
+    FloodItEngine engine = FloodItEngine.newGame(14, 6, 4L);
+    t.checkExpect(engine.cannotWin(), false);
+
+    // the answer is worked out once per move
+    t.checkExpect(engine.checkedAttempts, 0);
+    engine.maxAttempts = 0;
+    t.checkExpect(engine.cannotWin(), false);
+    engine.recount();
+    t.checkExpect(engine.cannotWin(), true);
+    engine.maxAttempts = engine.greedyMoves;
+    engine.recount();
+    int color = engine.clickedColor;
+    while (!engine.cannotWin()) {
+      color = (color + 1) % 6;
+      engine.applyMove(color);
+    }
+    t.checkExpect(engine.isLost(), false);
+    t.checkExpect(engine.isWon(), false);
+    t.checkExpect(engine.attempts + engine.movesLeft() > engine.maxAttempts, true);
+
+    // the estimate follows the board when it is colored again
+    engine.reset(5L);
+    t.checkExpect(engine.cannotWin(), false);
+    t.checkExpect(engine.maxAttempts, engine.greedyMoves);
+    engine.finishWave();
+    FloodItSolver solver = new FloodItSolver(engine);
+    t.checkExpect(engine.minMoves, solver.lowerBound(solver.start()));
+  }
+
+  // test that a board too big to estimate allows as many moves as before,
+  // and only counts the colors left
+  void testTooBig(Tester t) {
+    FloodItEngine engine = new FloodItEngine(14, 5, 42L, 10);
+    engine.finishWave();
+    t.checkExpect(engine.estimate(), false);
+    t.checkExpect(engine.maxAttempts, 22);
+    t.checkExpect(engine.cannotWin(), false);
+    engine.attempts = engine.maxAttempts - 1;
+    t.checkExpect(engine.cannotWin(), true);
+  }
+
+  // test that engines share their estimates instead of keeping arrays of
+  // their own, and that a shared estimate grows to fit a bigger board
+  void testShared(Tester t) {
+    DifficultyEstimate first = DifficultyEstimate.borrow(16, 3);
+    first.giveBack();
+    DifficultyEstimate second = DifficultyEstimate.borrow(26 * 26, 8);
+    t.checkExpect(second, first);
+    t.checkExpect(second.state.length >= 26 * 26, true);
+    t.checkExpect(second.left.length >= 8, true);
+    second.giveBack();
+
+    // engines of different boards get the same answers as from estimates of their own
+    for (long seed = 0; seed < 5; seed++) {
+      FloodItEngine small = FloodItEngine.newGame(8, 4, seed);
+      FloodItEngine big = FloodItEngine.newGame(26, 6, seed);
+      DifficultyEstimate own = new DifficultyEstimate(26 * 26, 6);
+      own.estimate(big.grid, 6, 0);
+      t.checkExpect(big.greedyMoves, own.greedyMoves);
+      t.checkExpect(big.minMoves, own.minMoves);
+      own.estimate(small.grid, 4, 0);
+      t.checkExpect(small.greedyMoves, own.greedyMoves);
+      t.checkExpect(small.movesLeft(), own.minMoves);
+    }
+
+    // the regions of the board worked out last are kept for its next move
+    DifficultyEstimate kept = DifficultyEstimate.borrow(16, 3);
+    FloodItEngine last = FloodItEngine.newGame(8, 4, 4L);
+    t.checkExpect(kept.loaded == last.boardId, false);
+    kept.giveBack();
+    last.movesLeft();
+    kept = DifficultyEstimate.borrow(16, 3);
+    t.checkExpect(kept.loaded, last.boardId);
+    kept.giveBack();
+  }
+
+  // test that a world ends a game that can no longer be won without using up
+  // its attempts
+  void testWorldGameOver(Tester t) {
+    FloodItWorld world = new FloodItWorld(14, 6, false, 4L);
+    world.instantMoves = true;
+    ExamplesFloodIt examples = new ExamplesFloodIt();
+    while (!world.gameOver) {
+      examples.click(world, examples.unfloodedCellNot(world, world.engine.clickedColor));
+    }
+    t.checkExpect(world.allFlooded, false);
+    t.checkExpect(world.engine.isLost(), false);
+    t.checkExpect(world.engine.cannotWin(), true);
+    t.checkExpect(world.notEnoughAttempts, true);
+
+    // a reset starts a game that can be won
+    world.reset();
+    t.checkExpect(world.notEnoughAttempts, false);
+    t.checkExpect(world.gameOver, false);
+  }
+}
@@ -0,0 +1,488 @@
+import tester.Tester;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+// The best move a search has found for a game so far
+class Hint {
+  // the search that found it
+  int generation;
+
+  // palette index of the move
+  int color;
+
+  // number of moves that flood the board when this one is played first
+  int moves;
+
+  // is it known that no fewer moves flood the board?
+  boolean optimal;
+
+  Hint(int generation, int color, int moves, boolean optimal) {
+    this.generation = generation;
+    this.color = color;
+    this.moves = moves;
+    this.optimal = optimal;
+  }
+}
+
+// Looks for the best move of a game while the player thinks about it. Every
+// search runs against a snapshot of the board on a background thread, a virtual
+// one where the JVM has them (Java 21 and later), and gets better the longer it
+// runs: a greedy playout first, then beam searches of doubling width, then an
+// iterative deepening search that proves the fewest moves. Every answer that
+// beats the last one is published, so hint() is one read and never waits.
+// Starting or cancelling a search only moves the generation on: the search
+// stops the next time it looks, and whatever it publishes after that is ignored.
+class HintEngine {
+  // the search whose answers count; only the thread playing the game changes it
+  volatile int generation = 0;
+
+  // the best answer published so far
+  AtomicReference<Hint> best = new AtomicReference<Hint>(new Hint(0, -1, 0, false));
+
+  // the most cells of a board that is searched
+  int maxCells = 10000;
+
+  // the widest beam searched
+  int maxBeam = 256;
+
+  // the most nodes the deepening search expands before giving up on proving
+  // the best answer
+  long maxNodes = 2000000;
+
+  // does every search get a virtual thread?
+  static boolean virtualThreads;
+
+  // runs the searches of every game
+  static ExecutorService searches = HintEngine.searchExecutor();
+
+  // one virtual thread per search if the JVM can, otherwise one platform thread
+  // that runs the searches in turn, which is enough since a cancelled search
+  // stops at once
+  static ExecutorService searchExecutor() {
+    try {
+      ExecutorService executor = (ExecutorService) Executors.class
+          .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+      HintEngine.virtualThreads = true;
+      return executor;
+    } catch (ReflectiveOperationException e) {
+      HintEngine.virtualThreads = false;
+      return Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "flood-it-hints");
+        t.setDaemon(true);
+        return t;
+      });
+    }
+  }
+
+  // the best move found for the board of the current search, or null if there
+  // is none yet
+  Hint hint() {
+    Hint hint = this.best.get();
+    return hint.generation == this.generation ? hint : null;
+  }
+
+  // stop the current search, returning the generation of the next one
+  int cancel() {
+    this.generation++;
+    return this.generation;
+  }
+
+  // start searching the board of the given engine, which may be showing a
+  // wave, in place of the current search. Only the flood state is copied here:
+  // the colors of cells that aren't flooded don't change until the next move
+  // or reset, which starts another search anyway
+  void restart(FloodItEngine engine) {
+    int generation = this.cancel();
+    if (engine.grid.numCells > this.maxCells || engine.isWon() || engine.isLost()) {
+      return;
+    }
+    FloodItBoard grid = engine.grid;
+    long[] flooded = grid.flooded.clone();
+    int floodColor = engine.clickedColor;
+    int numColors = engine.numColors;
+    HintEngine.searches.execute(
+        () -> this.search(generation, grid, flooded, floodColor, numColors));
+  }
+
+  // search the given board, whose flooded cells are about to be the given
+  // color, for the given generation
+  void search(int generation, FloodItBoard grid, long[] flooded, int floodColor,
+      int numColors) {
+    FloodItBoard board = new FloodItBoard(grid.size);
+    System.arraycopy(grid.colors, 0, board.colors, 0, board.numCells);
+    for (int w = 0; w < flooded.length; w++) {
+      long bits = flooded[w];
+      while (bits != 0) {
+        board.setColor((w << 6) + Long.numberOfTrailingZeros(bits), floodColor);
+        bits &= bits - 1;
+      }
+    }
+    if (this.generation != generation) {
+      return;
+    }
+    new HintSearch(this, generation, new FloodItSolver(new RegionGraph(board, numColors)))
+        .run();
+  }
+
+  // publish an answer of the given generation, unless one of a later
+  // generation has been published already
+  void publish(Hint hint) {
+    this.best.accumulateAndGet(hint,
+        (last, next) -> next.generation >= last.generation ? next : last);
+  }
+}
+
+// A state of a beam search, with the first move that led to it
+class BeamState {
+  // the flooded regions
+  long[] flooded;
+
+  // palette index of the first move
+  int first;
+
+  // the moves made plus a lower bound on the moves left
+  int estimate;
+
+  // number of flooded cells
+  int cells;
+
+  BeamState(long[] flooded, int first, int estimate, int cells) {
+    this.flooded = flooded;
+    this.first = first;
+    this.estimate = estimate;
+    this.cells = cells;
+  }
+}
+
+// Orders beam states by estimate, then by the most flooded cells
+class BeamStateComparator implements Comparator<BeamState> {
+  public int compare(BeamState a, BeamState b) {
+    if (a.estimate != b.estimate) {
+      return Integer.compare(a.estimate, b.estimate);
+    }
+    return Integer.compare(b.cells, a.cells);
+  }
+}
+
+// One search of a HintEngine, over the regions of a snapshot of the board
+class HintSearch {
+  HintEngine hints;
+
+  // the generation it searches for
+  int generation;
+
+  // the regions of the snapshot
+  FloodItSolver solver;
+
+  // the fewest moves found so far and the first of them
+  int bestMoves = Integer.MAX_VALUE;
+  int bestColor = -1;
+
+  // nodes expanded by the deepening search
+  long nodes = 0;
+
+  HintSearch(HintEngine hints, int generation, FloodItSolver solver) {
+    this.hints = hints;
+    this.generation = generation;
+    this.solver = solver;
+  }
+
+  // has a later search been started?
+  boolean isCancelled() {
+    return this.hints.generation != this.generation;
+  }
+
+  // publish the given first move, if it is better than the last one
+  void found(int color, int moves, boolean optimal) {
+    if (moves < this.bestMoves || optimal) {
+      this.bestMoves = moves;
+      this.bestColor = color;
+      this.hints.publish(new Hint(this.generation, color, moves, optimal));
+    }
+  }
+
+  // the number of cells in the given regions
+  int cells(long[] regions) {
+    int result = 0;
+    for (int w = 0; w < regions.length; w++) {
+      long bits = regions[w];
+      while (bits != 0) {
+        result += this.solver.graph.regionSize[(w << 6) + Long.numberOfTrailingZeros(bits)];
+        bits &= bits - 1;
+      }
+    }
+    return result;
+  }
+
+  // search ever harder until the best answer is proved or the search is cancelled
+  void run() {
+    long[] start = this.solver.start();
+    if (this.solver.isDone(start)) {
+      return;
+    }
+    this.greedy(start);
+    int bound = this.solver.lowerBound(start);
+    for (int width = 2; width <= this.hints.maxBeam && this.bestMoves > bound; width *= 2) {
+      if (this.isCancelled()) {
+        return;
+      }
+      this.beam(start, width);
+    }
+    if (this.bestMoves == bound) {
+      this.found(this.bestColor, this.bestMoves, true);
+    } else {
+      this.deepen(start, bound);
+    }
+  }
+
+  // always play the color that floods the most cells
+  void greedy(long[] start) {
+    long[] flooded = start;
+    int first = -1;
+    int moves = 0;
+    while (!this.solver.isDone(flooded)) {
+      long[] bordering = this.solver.bordering(flooded);
+      int bestColor = -1;
+      int bestCells = -1;
+      for (int c : this.solver.choices(flooded, bordering)) {
+        long[] regions = this.solver.colorRegions[c];
+        long[] taken = new long[this.solver.words];
+        for (int w = 0; w < this.solver.words; w++) {
+          taken[w] = bordering[w] & regions[w];
+        }
+        int cells = this.cells(taken);
+        if (cells > bestCells) {
+          bestCells = cells;
+          bestColor = c;
+        }
+      }
+      if (first < 0) {
+        first = bestColor;
+      }
+      moves++;
+      flooded = this.solver.play(flooded, bordering, bestColor);
+    }
+    this.found(first, moves, false);
+  }
+
+  // keep only the given number of the most promising states after every move
+  void beam(long[] start, int width) {
+    ArrayList<BeamState> beam = new ArrayList<BeamState>();
+    beam.add(new BeamState(start, -1, 0, 0));
+    for (int depth = 1; depth < this.bestMoves; depth++) {
+      if (this.isCancelled()) {
+        return;
+      }
+      HashSet<RegionSet> seen = new HashSet<RegionSet>();
+      ArrayList<BeamState> next = new ArrayList<BeamState>();
+      for (BeamState state : beam) {
+        long[] bordering = this.solver.bordering(state.flooded);
+        for (int c : this.solver.choices(state.flooded, bordering)) {
+          long[] flooded = this.solver.play(state.flooded, bordering, c);
+          int first = state.first < 0 ? c : state.first;
+          if (this.solver.isDone(flooded)) {
+            this.found(first, depth, false);
+            return;
+          }
+          int estimate = depth + this.solver.lowerBound(flooded);
+          if (estimate < this.bestMoves && seen.add(new RegionSet(flooded))) {
+            next.add(new BeamState(flooded, first, estimate, this.cells(flooded)));
+          }
+        }
+      }
+      next.sort(new BeamStateComparator());
+      beam = new ArrayList<BeamState>(next.subList(0, Math.min(width, next.size())));
+    }
+  }
+
+  // look for fewer moves than the best so far one limit at a time, starting
+  // from the lower bound, so the first answer found is the fewest
+  void deepen(long[] start, int bound) {
+    for (int limit = bound; limit < this.bestMoves; limit++) {
+      int first = this.dfs(start, 0, limit, -1);
+      if (first >= 0) {
+        this.found(first, limit, true);
+        return;
+      }
+      if (this.isCancelled() || this.nodes > this.hints.maxNodes) {
+        return;
+      }
+    }
+    this.found(this.bestColor, this.bestMoves, true);
+  }
+
+  // the first move of a way to flood the board in at most the given number of
+  // moves from the given state, or -1 if there is none or the search stopped
+  int dfs(long[] flooded, int depth, int limit, int first) {
+    if (this.solver.isDone(flooded)) {
+      return first;
+    }
+    this.nodes++;
+    if (depth + this.solver.lowerBound(flooded) > limit || this.isCancelled()
+        || this.nodes > this.hints.maxNodes) {
+      return -1;
+    }
+    long[] bordering = this.solver.bordering(flooded);
+    for (int c : this.solver.choices(flooded, bordering)) {
+      int found = this.dfs(this.solver.play(flooded, bordering, c), depth + 1, limit,
+          first < 0 ? c : first);
+      if (found >= 0) {
+        return found;
+      }
+    }
+    return -1;
+  }
+}
+
+class ExamplesFloodItHints {
+
+  // wait up to ten seconds for the current search of the given engine to prove
+  // its answer
+  Hint awaitOptimal(HintEngine hints) throws InterruptedException {
+    for (int i = 0; i < 1000; i++) {
+      Hint hint = hints.hint();
+      if (hint != null && hint.optimal) {
+        return hint;
+      }
+      Thread.sleep(10);
+    }
+    return hints.hint();
+  }
+
+  // search the board of the given engine on this thread
+  Hint searchNow(HintEngine hints, FloodItEngine engine) {
+    int generation = hints.cancel();
+    hints.search(generation, engine.grid, engine.grid.flooded.clone(), engine.clickedColor,
+        engine.numColors);
+    return hints.hint();
+  }
+
+  // test that a search proves the fewest moves, and that its move is the first
+  // of a shortest way to flood the board
+  void testSearch(Tester t) {
+    HintEngine hints = new HintEngine();
+    for (long seed = 0; seed < 8; seed++) {
+      FloodItEngine engine = FloodItEngine.newGame(6, 4, seed);
+      int fewest = new FloodItSolver(engine).solve().moves.length;
+      Hint hint = this.searchNow(hints, engine);
+      t.checkExpect(hint.moves, fewest);
+      t.checkExpect(hint.optimal, true);
+      engine.applyMove(hint.color);
+      t.checkExpect(new FloodItSolver(engine).solve().moves.length, fewest - 1);
+    }
+  }
+
+  // test that the greedy answer is published when nothing better can be proved
+  void testGreedyOnly(Tester t) {
+    HintEngine hints = new HintEngine();
+    hints.maxBeam = 0;
+    hints.maxNodes = 0;
+    FloodItEngine engine = FloodItEngine.newGame(14, 6, 3L);
+    Hint hint = this.searchNow(hints, engine);
+    t.checkExpect(hint.moves, new FloodItSolver(engine).greedy().length);
+    t.checkExpect(hint.optimal, false);
+    t.checkExpect(hint.color >= 0 && hint.color < 6, true);
+  }
+
+  // test that a board searched while its wave is shown is the board after the move
+  void testSnapshotDuringWave(Tester t) {
+    HintEngine hints = new HintEngine();
+    FloodItEngine shown = FloodItEngine.newGame(7, 4, 5L);
+    FloodItEngine done = FloodItEngine.newGame(7, 4, 5L);
+    int color = (shown.clickedColor + 1) % 4;
+    shown.startMove(color);
+    done.applyMove(color);
+    t.checkExpect(shown.isSpreading(), true);
+    t.checkExpect(this.searchNow(hints, shown).moves,
+        new FloodItSolver(done).solve().moves.length);
+  }
+
+  // test that cancelling hides the answer at once, and that an answer published
+  // by an older search is ignored
+  void testCancel(Tester t) {
+    HintEngine hints = new HintEngine();
+    FloodItEngine engine = FloodItEngine.newGame(6, 4, 1L);
+    Hint hint = this.searchNow(hints, engine);
+    t.checkExpect(hints.hint(), hint);
+    int old = hint.generation;
+    hints.cancel();
+    t.checkExpect(hints.hint(), null);
+    hints.publish(new Hint(old, 2, 3, true));
+    t.checkExpect(hints.hint(), null);
+    hints.publish(new Hint(hints.generation, 1, 4, false));
+    hints.publish(new Hint(old, 2, 3, true));
+    t.checkExpect(hints.hint().color, 1);
+  }
+
+  // test a search in the background
+  void testRestart(Tester t) throws InterruptedException {
+    HintEngine hints = new HintEngine();
+    FloodItEngine engine = FloodItEngine.newGame(8, 4, 2L);
+    hints.restart(engine);
+    Hint hint = this.awaitOptimal(hints);
+    t.checkExpect(hint.moves, new FloodItSolver(engine).solve().moves.length);
+
+    // boards over the limit, and games that are over, aren't searched
+    hints.maxCells = 10;
+    hints.restart(engine);
+    t.checkExpect(hints.hint(), null);
+    hints.maxCells = 10000;
+    FloodItEngine won = FloodItEngine.newGame(2, 3, 1L);
+    for (int i = 0; i < 3; i++) {
+      won.applyMove(i);
+    }
+    hints.restart(won);
+    t.checkExpect(hints.hint(), null);
+  }
+
+  // test that a world searches again whenever a click or reset changes the
+  // game, and shows the hint beside the attempts counter
+  void testWorldHints(Tester t) throws InterruptedException {
+    FloodItWorld world = new FloodItWorld(8, 4, false, 4L);
+    int generation = world.hints.generation;
+    world.onKeyEvent("h");
+    t.checkExpect(world.showHints, true);
+    t.checkExpect(world.hints.generation, generation + 1);
+
+    Hint hint = this.awaitOptimal(world.hints);
+    t.checkExpect(hint.moves,
+        new FloodItSolver(FloodItEngine.newGame(8, 4, world.engine.seed)).solve().moves.length);
+    world.makeScene();
+    t.checkExpect(world.shownHint, hint.color);
+
+    // a click searches the board after the move, even while its wave is shown
+    ExamplesFloodIt examples = new ExamplesFloodIt();
+    world.onMousePressed(examples.unfloodedCell(world));
+    t.checkExpect(world.hints.generation, generation + 2);
+    t.checkExpect(world.animating, true);
+    t.checkExpect(this.awaitOptimal(world.hints).moves >= hint.moves - 1, true);
+
+    // a click while the wave is shown only cancels, since the board it would
+    // be searched on isn't known until the queued move is made
+    int cell = examples.unfloodedCellNot(world, world.engine.clickedColor);
+    if (cell >= 0) {
+      examples.click(world, cell);
+      t.checkExpect(world.hints.generation, generation + 3);
+      t.checkExpect(world.hints.hint(), null);
+      while (world.animating) {
+        world.onTick();
+      }
+      t.checkExpect(world.hints.generation, generation + 4);
+    }
+
+    int before = world.hints.generation;
+    world.reset();
+    t.checkExpect(world.hints.generation, before + 1);
+
+    // hints off hides the hint
+    world.onKeyEvent("h");
+    t.checkExpect(world.hints.hint(), null);
+    world.makeScene();
+    t.checkExpect(world.shownHint, -1);
+  }
+}
@@ -0,0 +1,475 @@
+import javalib.worldimages.Posn;
+import tester.Tester;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+// The moves of one game, written down as they are made, from which the game
+// can be played again exactly. The board is known by its seed, so a journal
+// is only a few bytes more than one byte per move. Written to a buffer, big
+// endian, a journal is:
+//
+//   0  int   magic number, "FLMJ"
+//   4  byte  version, 4
+//   5  byte  number of colors less one, so 256 colors fit
+//   6  int   size
+//  10  long  seed of the board
+//  18  int   maximum number of attempts
+//  22  byte  1 if the game ended as soon as the moves left couldn't flood the
+//            board by the estimate of its difficulty, else 0
+//  23  int   number of moves
+//  27  byte  palette index of each move
+//
+// so journals can be appended one after another to one buffer and read back
+// in the same order.
+class MoveJournal {
+  static final int magic = 0x464C4D4A;
+
+  static final int version = 4;
+
+  static final int headerBytes = 27;
+
+  // the board played on
+  long seed;
+  int size;
+  int numColors;
+
+  // the attempts the game allowed, so a replay doesn't have to estimate the
+  // board again
+  int maxAttempts;
+
+  // was the board estimated, so the replay ends the game by the same rule?
+  boolean estimated;
+
+  // the palette index of each move, in moves[0 .. count)
+  byte[] moves;
+  int count = 0;
+
+  // an empty journal
+  MoveJournal() {
+    this.moves = new byte[64];
+  }
+
+  // the journal at the position of the given buffer, moving the position past it
+  MoveJournal(ByteBuffer buffer) {
+    if (buffer.remaining() < MoveJournal.headerBytes || buffer.getInt() != MoveJournal.magic
+        || buffer.get() != MoveJournal.version) {
+      throw new IllegalArgumentException("Not a Flood-It move journal");
+    }
+    this.numColors = (buffer.get() & 0xFF) + 1;
+    this.size = buffer.getInt();
+    this.seed = buffer.getLong();
+    this.maxAttempts = buffer.getInt();
+    byte estimated = buffer.get();
+    this.estimated = estimated == 1;
+    this.count = buffer.getInt();
+    // only a journal of a board an engine can be made with is replayed
+    if (this.numColors < 3 || this.size < 2 || this.size > 16384 || estimated < 0
+        || estimated > 1 || this.count < 0) {
+      throw new IllegalArgumentException("Not a Flood-It move journal");
+    }
+    if (buffer.remaining() < this.count) {
+      throw new IllegalArgumentException("The move journal is cut short");
+    }
+    this.moves = new byte[Math.max(this.count, 64)];
+    buffer.get(this.moves, 0, this.count);
+    for (int i = 0; i < this.count; i++) {
+      if (this.move(i) >= this.numColors) {
+        throw new IllegalArgumentException("Not a Flood-It move journal");
+      }
+    }
+  }
+
+  // start writing down a new game on the board of the given engine
+  void begin(FloodItEngine engine) {
+    this.seed = engine.seed;
+    this.size = engine.size;
+    this.numColors = engine.numColors;
+    this.maxAttempts = engine.maxAttempts;
+    this.estimated = engine.estimates;
+    this.count = 0;
+  }
+
+  // write down a move of the given palette index
+  void record(int color) {
+    if (this.count == this.moves.length) {
+      this.moves = Arrays.copyOf(this.moves, 2 * this.moves.length);
+    }
+    this.moves[this.count] = (byte) color;
+    this.count++;
+  }
+
+  // the palette index of the given move
+  int move(int i) {
+    return this.moves[i] & 0xFF;
+  }
+
+  // the number of bytes this journal takes in a buffer
+  int bytes() {
+    return MoveJournal.headerBytes + this.count;
+  }
+
+  // append this journal at the position of the given buffer
+  void writeTo(ByteBuffer buffer) {
+    buffer.putInt(MoveJournal.magic);
+    buffer.put((byte) MoveJournal.version);
+    buffer.put((byte) (this.numColors - 1));
+    buffer.putInt(this.size);
+    buffer.putLong(this.seed);
+    buffer.putInt(this.maxAttempts);
+    buffer.put((byte) (this.estimated ? 1 : 0));
+    buffer.putInt(this.count);
+    buffer.put(this.moves, 0, this.count);
+  }
+
+  // play the journal again without drawing anything, returning an engine
+  // left exactly as the one that made the moves was after its last one
+  FloodItEngine replay() {
+    return new JournalReplayer().replay(this);
+  }
+}
+
+// Plays journals back without drawing anything, fast enough to check a large
+// corpus of games. Every cell next to the flood waits on a list for its color,
+// so a move floods the cells on the list of its color and whatever of that
+// color they reach; each cell is looked at once per game, however many moves
+// it takes. The engine and the lists are kept from one replay to the next.
+// The engine never estimates the difficulty of a board when it is colored,
+// since the journal holds the attempts the game allowed; if the game that
+// made the journal was estimated, the replayed engine works out whether the
+// moves left can flood the board the same way, once it is asked.
+class JournalReplayer {
+  // the engine the last journal was played back on
+  FloodItEngine engine;
+
+  // the cells next to the flood of each color, in frontier[c][0 .. frontierCount[c])
+  int[][] frontier;
+  int[] frontierCount;
+
+  // cells that are flooded or on a list, 64 per word
+  long[] queued;
+
+  // cells being flooded by the current move
+  int[] stack;
+
+  // play the given journal back, returning an engine left exactly as the one
+  // that made the moves was after its last one; the engine is used again by
+  // the next replay
+  FloodItEngine replay(MoveJournal journal) {
+    if (this.engine == null || this.engine.size != journal.size
+        || this.engine.numColors != journal.numColors) {
+      this.engine = new FloodItEngine(journal.size, journal.numColors, journal.seed, 0);
+      int numCells = this.engine.grid.numCells;
+      this.frontier = new int[journal.numColors][Math.min(numCells, 4 * journal.size)];
+      this.frontierCount = new int[journal.numColors];
+      this.queued = new long[(numCells + 63) >>> 6];
+      this.stack = new int[numCells];
+    } else {
+      this.engine.estimates = false;
+      this.engine.reset(journal.seed);
+    }
+    FloodItEngine engine = this.engine;
+    FloodItBoard grid = engine.grid;
+    Arrays.fill(this.frontierCount, 0);
+    Arrays.fill(this.queued, 0L);
+
+    // the region of the top left cell is flooded before any move
+    int floodColor = grid.getColor(0);
+    this.queued[0] = 1L;
+    this.flood(grid, 0, floodColor);
+    for (int i = 0; i < journal.count; i++) {
+      floodColor = journal.move(i);
+      int count = this.frontierCount[floodColor];
+      this.frontierCount[floodColor] = 0;
+      for (int j = 0; j < count; j++) {
+        this.flood(grid, this.frontier[floodColor][j], floodColor);
+      }
+    }
+
+    // the flooded cells all have the color of the last move
+    for (int w = 0; w < grid.flooded.length; w++) {
+      long bits = grid.flooded[w];
+      while (bits != 0) {
+        grid.setColor((w << 6) + Long.numberOfTrailingZeros(bits), floodColor);
+        bits &= bits - 1;
+      }
+    }
+    engine.recount();
+    engine.attempts = journal.count;
+    engine.maxAttempts = journal.maxAttempts;
+    engine.estimates = journal.estimated;
+    engine.clickedColor = floodColor;
+    engine.stopWave();
+    engine.captured = 0;
+    return engine;
+  }
+
+  // flood the given cell and every cell of the given color it reaches, putting
+  // the cells of other colors next to them on the lists of their colors
+  void flood(FloodItBoard grid, int start, int color) {
+    int top = 0;
+    this.stack[top++] = start;
+    while (top > 0) {
+      int index = this.stack[--top];
+      grid.setFlooded(index);
+      top = this.reach(grid, grid.left(index), color, top);
+      top = this.reach(grid, grid.top(index), color, top);
+      top = this.reach(grid, grid.right(index), color, top);
+      top = this.reach(grid, grid.bottom(index), color, top);
+    }
+  }
+
+  // reach the given neighbor of a flooded cell, if there is one and it hasn't
+  // been reached yet: onto the stack if it has the given color, else onto the
+  // list of its color; returns the new top of the stack
+  int reach(FloodItBoard grid, int index, int color, int top) {
+    if (index < 0 || (this.queued[index >>> 6] & (1L << index)) != 0) {
+      return top;
+    }
+    this.queued[index >>> 6] |= 1L << index;
+    int c = grid.getColor(index);
+    if (c == color) {
+      this.stack[top] = index;
+      return top + 1;
+    }
+    if (this.frontierCount[c] == this.frontier[c].length) {
+      this.frontier[c] = Arrays.copyOf(this.frontier[c], 2 * this.frontier[c].length);
+    }
+    this.frontier[c][this.frontierCount[c]] = index;
+    this.frontierCount[c]++;
+    return top;
+  }
+}
+
+class ExamplesFloodItJournal {
+
+  // click the first cell of the view that is not flooded, and tick until the
+  // move is done
+  void clickAndTick(FloodItWorld world) {
+    for (int i = 0; i < world.board.size(); i++) {
+      Cell c = world.board.get(i);
+      if (!c.flooded) {
+        world.onMousePressed(new Posn(c.x, c.y));
+        break;
+      }
+    }
+    while (world.animating && !world.gameOver) {
+      world.onTick();
+    }
+  }
+
+  // check that two engines are in the same state
+  void checkSame(Tester t, FloodItEngine actual, FloodItEngine expected) {
+    t.checkExpect(actual.grid.colors, expected.grid.colors);
+    t.checkExpect(actual.grid.flooded, expected.grid.flooded);
+    t.checkExpect(actual.attempts, expected.attempts);
+    t.checkExpect(actual.maxAttempts, expected.maxAttempts);
+    t.checkExpect(actual.floodedCount, expected.floodedCount);
+    t.checkExpect(actual.remaining, expected.remaining);
+    t.checkExpect(actual.isWon(), expected.isWon());
+    t.checkExpect(actual.isOver(), expected.isOver());
+  }
+
+  // test that a game clicked through the world replays to the same board
+  void testReplayClicks(Tester t) {
+    FloodItWorld world = new FloodItWorld(14, 5, false, 8L);
+    MoveJournal journal = new MoveJournal();
+    world.engine.recordMoves(journal);
+    t.checkExpect(journal.seed, world.engine.seed);
+    for (int i = 0; i < 8; i++) {
+      this.clickAndTick(world);
+    }
+    t.checkExpect(journal.count, 8);
+    world.engine.finishWave();
+    this.checkSame(t, journal.replay(), world.engine);
+
+    // and played to the end
+    while (!world.gameOver) {
+      this.clickAndTick(world);
+      world.isGameOver();
+    }
+    world.engine.finishWave();
+    this.checkSame(t, journal.replay(), world.engine);
+
+    // a reset starts a new journal for the new game
+    world.reset();
+    t.checkExpect(journal.count, 0);
+    t.checkExpect(journal.seed, world.engine.seed);
+    world.instantMoves = true;
+    this.clickAndTick(world);
+    this.clickAndTick(world);
+    this.checkSame(t, journal.replay(), world.engine);
+  }
+
+  // test replaying many games played by the engine, including moves that
+  // flood nothing
+  void testReplayMoves(Tester t) {
+    for (long seed = 0; seed < 20; seed++) {
+      FloodItEngine engine = new FloodItEngine(20, 6, seed);
+      MoveJournal journal = new MoveJournal();
+      engine.recordMoves(journal);
+      for (int i = 0; i < 100; i++) {
+        engine.applyMove((int) ((seed + i * i) % 6));
+      }
+      t.checkExpect(journal.count, 100);
+      this.checkSame(t, journal.replay(), engine);
+    }
+  }
+
+  // test that one replayer plays back games of different boards one after another
+  void testReplayerReused(Tester t) {
+    JournalReplayer replayer = new JournalReplayer();
+    for (long seed = 0; seed < 6; seed++) {
+      int size = seed < 3 ? 12 : 9;
+      FloodItEngine engine = new FloodItEngine(size, 4, seed);
+      MoveJournal journal = new MoveJournal();
+      engine.recordMoves(journal);
+      for (int i = 0; i < 3 + seed; i++) {
+        engine.applyMove((int) ((seed + i) % 4));
+      }
+      FloodItEngine replayed = replayer.replay(journal);
+      t.checkExpect(replayed == replayer.engine, true);
+      // the replay takes the attempts allowed from the journal
+      t.checkExpect(replayed.estimated, false);
+      t.checkExpect(replayed.estimates, true);
+      this.checkSame(t, replayed, engine);
+    }
+  }
+
+  // test that a replay ends a game after the same move as the game that made
+  // the journal, whether or not that game estimated its board
+  void testReplayEndsTheSame(Tester t) {
+    JournalReplayer replayer = new JournalReplayer();
+    for (long seed = 0; seed < 6; seed++) {
+      FloodItEngine engine = seed < 3 ? FloodItEngine.newGame(14, 6, seed)
+          : new FloodItEngine(14, 6, seed, 10);
+      engine.finishWave();
+      MoveJournal journal = new MoveJournal();
+      engine.recordMoves(journal);
+      int color = engine.clickedColor;
+      while (!engine.isOver()) {
+        color = (color + 1 + (int) (seed % 2)) % 6;
+        engine.applyMove(color);
+        t.checkExpect(replayer.replay(journal).isOver(), engine.isOver());
+        t.checkExpect(replayer.engine.cannotWin(), engine.cannotWin());
+      }
+      t.checkExpect(journal.estimated, seed < 3);
+      t.checkExpect(new MoveJournal(this.written(journal)).replay().isOver(), true);
+    }
+  }
+
+  // the given journal, written to a buffer of its own and flipped for reading
+  ByteBuffer written(MoveJournal journal) {
+    ByteBuffer buffer = ByteBuffer.allocate(journal.bytes());
+    journal.writeTo(buffer);
+    buffer.flip();
+    return buffer;
+  }
+
+  // test writing journals one after another and reading them back
+  void testJournalBuffer(Tester t) {
+    FloodItEngine first = new FloodItEngine(6, 3, 1L);
+    MoveJournal a = new MoveJournal();
+    first.recordMoves(a);
+    first.applyMove(1);
+    first.applyMove(2);
+    FloodItEngine second = new FloodItEngine(300, 8, 2L);
+    MoveJournal b = new MoveJournal();
+    second.recordMoves(b);
+    for (int i = 0; i < 200; i++) {
+      second.applyMove(i % 8);
+    }
+
+    ByteBuffer buffer = ByteBuffer.allocate(a.bytes() + b.bytes());
+    a.writeTo(buffer);
+    b.writeTo(buffer);
+    t.checkExpect(buffer.remaining(), 0);
+    buffer.flip();
+    MoveJournal readA = new MoveJournal(buffer);
+    MoveJournal readB = new MoveJournal(buffer);
+    t.checkExpect(buffer.remaining(), 0);
+    t.checkExpect(readA.count, 2);
+    t.checkExpect(readB.count, 200);
+    t.checkExpect(readB.seed, second.seed);
+    this.checkSame(t, readA.replay(), first);
+    this.checkSame(t, readB.replay(), second);
+  }
+
+  // test a journal of 256 colors, whose palette indices don't fit a signed byte
+  void testJournalManyColors(Tester t) {
+    FloodItEngine engine = new FloodItEngine(20, 256, 4L);
+    MoveJournal journal = new MoveJournal();
+    engine.recordMoves(journal);
+    for (int i = 0; i < 40; i++) {
+      engine.applyMove(engine.grid.getColor(i));
+    }
+    engine.applyMove(255);
+    ByteBuffer buffer = ByteBuffer.allocate(journal.bytes());
+    journal.writeTo(buffer);
+    buffer.flip();
+    MoveJournal read = new MoveJournal(buffer);
+    t.checkExpect(read.numColors, 256);
+    t.checkExpect(read.move(40), 255);
+    this.checkSame(t, read.replay(), engine);
+  }
+
+  // test the journals and recordings that aren't allowed
+  void testJournalErrors(Tester t) {
+    FloodItEngine engine = new FloodItEngine(6, 3, 1L);
+    engine.applyMove(1);
+    t.checkException(
+        new IllegalStateException("Moves can only be recorded from the start of a game"),
+        engine, "recordMoves", new MoveJournal());
+    t.checkConstructorException(new IllegalArgumentException("Not a Flood-It move journal"),
+        "MoveJournal", ByteBuffer.allocate(30));
+
+    MoveJournal journal = new MoveJournal();
+    new FloodItEngine(6, 3, 1L).recordMoves(journal);
+    journal.record(1);
+    ByteBuffer cut = ByteBuffer.allocate(journal.bytes());
+    journal.writeTo(cut);
+    cut.flip();
+    cut.limit(cut.limit() - 1);
+    t.checkConstructorException(new IllegalArgumentException("The move journal is cut short"),
+        "MoveJournal", cut);
+
+    // boards no engine can be made with
+    for (int size : new int[] {-6, 0, 1, 16385, Integer.MAX_VALUE}) {
+      ByteBuffer badSize = ByteBuffer.allocate(journal.bytes());
+      journal.writeTo(badSize);
+      badSize.putInt(6, size);
+      badSize.flip();
+      t.checkConstructorException(new IllegalArgumentException("Not a Flood-It move journal"),
+          "MoveJournal", badSize);
+    }
+    ByteBuffer badFlag = this.written(journal);
+    badFlag.put(22, (byte) 2);
+    t.checkConstructorException(new IllegalArgumentException("Not a Flood-It move journal"),
+        "MoveJournal", badFlag);
+    ByteBuffer twoColors = ByteBuffer.allocate(journal.bytes());
+    journal.writeTo(twoColors);
+    twoColors.put(5, (byte) 1);
+    twoColors.flip();
+    t.checkConstructorException(new IllegalArgumentException("Not a Flood-It move journal"),
+        "MoveJournal", twoColors);
+
+    // a negative number of moves
+    ByteBuffer negative = ByteBuffer.allocate(journal.bytes());
+    journal.writeTo(negative);
+    negative.putInt(MoveJournal.headerBytes - 4, -1);
+    negative.flip();
+    t.checkConstructorException(new IllegalArgumentException("Not a Flood-It move journal"),
+        "MoveJournal", negative);
+
+    // a move that isn't in the palette
+    ByteBuffer badMove = ByteBuffer.allocate(journal.bytes());
+    journal.writeTo(badMove);
+    badMove.put(MoveJournal.headerBytes, (byte) 3);
+    badMove.flip();
+    t.checkConstructorException(new IllegalArgumentException("Not a Flood-It move journal"),
+        "MoveJournal", badMove);
+    badMove.put(MoveJournal.headerBytes, (byte) 2);
+    badMove.rewind();
+    t.checkExpect(new MoveJournal(badMove).move(0), 2);
+  }
+}
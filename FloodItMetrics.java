@@ -0,0 +1,453 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import javalib.worldimages.Posn;
+import tester.Tester;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+// A Flight Recorder event for one call to FloodItWorld.onTick
+@Name("floodit.Tick")
+@Label("Flood-It Tick")
+@Category("Flood-It")
+@Description("One step of the flood animation")
+class TickEvent extends jdk.jfr.Event {
+  @Label("Cells Recolored")
+  @Description("Cells on the wave front when the tick started, all recolored by it")
+  int cellsRecolored;
+
+  @Label("Cells Captured")
+  @Description("Cells flooded for the first time by this tick")
+  int cellsCaptured;
+}
+
+// A Flight Recorder event for one call to FloodItWorld.makeScene
+@Name("floodit.Scene")
+@Label("Flood-It Scene")
+@Category("Flood-It")
+@Description("One frame drawn, from scratch or over the last one")
+class SceneEvent extends jdk.jfr.Event {
+  @Label("Cells Placed")
+  int cellsPlaced;
+
+  @Label("From Scratch")
+  boolean fromScratch;
+}
+
+// A Flight Recorder event for one move, from the click until the board settles
+@Name("floodit.Move")
+@Label("Flood-It Move")
+@Category("Flood-It")
+@Description("One move, from the click until the flood stops spreading")
+class MoveEvent extends jdk.jfr.Event {
+  @Label("Color")
+  @Description("Palette index of the color played")
+  int color;
+
+  @Label("Row")
+  int row;
+
+  @Label("Column")
+  int col;
+
+  @Label("Attempts")
+  int attempts;
+
+  @Label("Instant")
+  @Description("Was the whole move spread at once instead of one ring per tick?")
+  boolean instant;
+
+  @Label("Cells Captured")
+  int cellsCaptured;
+}
+
+// Counts of latencies in buckets by powers of two: bucket b holds the
+// latencies of at least 2^b and under 2^(b+1) nanoseconds. Recording one
+// is a single atomic increment and allocates nothing.
+class LatencyHistogram {
+  AtomicLongArray buckets = new AtomicLongArray(64);
+
+  // count the given latency
+  void record(long nanos) {
+    this.buckets.incrementAndGet(63 - Long.numberOfLeadingZeros(Math.max(1, nanos)));
+  }
+
+  // the count of each bucket
+  long[] counts() {
+    long[] counts = new long[64];
+    for (int b = 0; b < 64; b++) {
+      counts[b] = this.buckets.get(b);
+    }
+    return counts;
+  }
+
+  // the latency, in microseconds, that the given fraction of latencies are
+  // under, rounded up to the top of its bucket; 0 before anything is recorded
+  double percentile(double fraction) {
+    long[] counts = this.counts();
+    long total = 0;
+    for (long c : counts) {
+      total += c;
+    }
+    if (total == 0) {
+      return 0;
+    }
+    long wanted = (long) Math.ceil(fraction * total);
+    long seen = 0;
+    for (int b = 0; b < 64; b++) {
+      seen += counts[b];
+      if (seen >= wanted) {
+        return Math.scalb(1.0, b + 1) / 1000;
+      }
+    }
+    return Math.scalb(1.0, 64) / 1000;
+  }
+
+  // forget every latency
+  void clear() {
+    for (int b = 0; b < 64; b++) {
+      this.buckets.set(b, 0);
+    }
+  }
+}
+
+// Counters and latencies of every game in this JVM, read through JMX as the
+// MBean FloodIt:type=Metrics. Recording allocates nothing, so the hot paths
+// can record every call. Rates are per second since the rate was last read.
+class FloodItMetrics implements DynamicMBean {
+  // the metrics every world records to
+  static FloodItMetrics shared = FloodItMetrics.register("FloodIt:type=Metrics");
+
+  // checked before making an event, so nothing is allocated unless it is recorded
+  static TickEvent tickProbe = new TickEvent();
+  static SceneEvent sceneProbe = new SceneEvent();
+  static MoveEvent moveProbe = new MoveEvent();
+
+  LongAdder moves = new LongAdder();
+  LongAdder floodedCells = new LongAdder();
+  LongAdder frames = new LongAdder();
+  LongAdder ticks = new LongAdder();
+  LongAdder resets = new LongAdder();
+
+  LatencyHistogram tickLatency = new LatencyHistogram();
+  LatencyHistogram sceneLatency = new LatencyHistogram();
+  LatencyHistogram moveLatency = new LatencyHistogram();
+
+  // the counts behind each rate when it was last read, and when that was
+  long[] rateCounts = new long[3];
+  long[] rateNanos = new long[3];
+
+  // the names of the attributes, in the order getMBeanInfo lists them
+  String[] names = {"Moves", "FloodedCells", "Frames", "Ticks", "Resets",
+      "MovesPerSecond", "FloodedCellsPerSecond", "FramesPerSecond",
+      "TickP50Micros", "TickP99Micros", "SceneP50Micros", "SceneP99Micros",
+      "MoveP50Micros", "MoveP99Micros",
+      "TickLatencyHistogram", "SceneLatencyHistogram", "MoveLatencyHistogram"};
+
+  FloodItMetrics() {
+    long now = System.nanoTime();
+    for (int i = 0; i < this.rateNanos.length; i++) {
+      this.rateNanos[i] = now;
+    }
+  }
+
+  // metrics registered with the platform MBean server under the given name,
+  // or left unregistered if they can't be
+  static FloodItMetrics register(String name) {
+    FloodItMetrics metrics = new FloodItMetrics();
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName objectName = new ObjectName(name);
+      if (!server.isRegistered(objectName)) {
+        server.registerMBean(metrics, objectName);
+      }
+    } catch (JMException e) {
+      // the game runs the same without being watched
+      return metrics;
+    }
+    return metrics;
+  }
+
+  // one tick that took the given time and flooded the given number of cells
+  void tick(long nanos, int captured) {
+    this.ticks.increment();
+    this.floodedCells.add(captured);
+    this.tickLatency.record(nanos);
+  }
+
+  // one frame that took the given time
+  void frame(long nanos) {
+    this.frames.increment();
+    this.sceneLatency.record(nanos);
+  }
+
+  // one move that took the given time to settle
+  void move(long nanos) {
+    this.moves.increment();
+    this.moveLatency.record(nanos);
+  }
+
+  // one instant move, which floods its cells without any ticks
+  void instantMove(long nanos, int captured) {
+    this.move(nanos);
+    this.floodedCells.add(captured);
+  }
+
+  // one reset
+  void reset() {
+    this.resets.increment();
+  }
+
+  // the given counter per second since this rate was last read
+  synchronized double rate(int which, long count) {
+    long now = System.nanoTime();
+    double result = (count - this.rateCounts[which]) / ((now - this.rateNanos[which]) / 1e9);
+    this.rateCounts[which] = count;
+    this.rateNanos[which] = now;
+    return result;
+  }
+
+  public Object getAttribute(String name) throws AttributeNotFoundException {
+    switch (name) {
+      case "Moves":
+        return this.moves.sum();
+      case "FloodedCells":
+        return this.floodedCells.sum();
+      case "Frames":
+        return this.frames.sum();
+      case "Ticks":
+        return this.ticks.sum();
+      case "Resets":
+        return this.resets.sum();
+      case "MovesPerSecond":
+        return this.rate(0, this.moves.sum());
+      case "FloodedCellsPerSecond":
+        return this.rate(1, this.floodedCells.sum());
+      case "FramesPerSecond":
+        return this.rate(2, this.frames.sum());
+      case "TickP50Micros":
+        return this.tickLatency.percentile(0.5);
+      case "TickP99Micros":
+        return this.tickLatency.percentile(0.99);
+      case "SceneP50Micros":
+        return this.sceneLatency.percentile(0.5);
+      case "SceneP99Micros":
+        return this.sceneLatency.percentile(0.99);
+      case "MoveP50Micros":
+        return this.moveLatency.percentile(0.5);
+      case "MoveP99Micros":
+        return this.moveLatency.percentile(0.99);
+      case "TickLatencyHistogram":
+        return this.tickLatency.counts();
+      case "SceneLatencyHistogram":
+        return this.sceneLatency.counts();
+      case "MoveLatencyHistogram":
+        return this.moveLatency.counts();
+      default:
+        throw new AttributeNotFoundException(name);
+    }
+  }
+
+  public AttributeList getAttributes(String[] names) {
+    AttributeList result = new AttributeList();
+    for (String name : names) {
+      try {
+        result.add(new Attribute(name, this.getAttribute(name)));
+      } catch (AttributeNotFoundException e) {
+        // unknown attributes are left out of the list
+        continue;
+      }
+    }
+    return result;
+  }
+
+  public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+    throw new AttributeNotFoundException(attribute.getName() + " can't be set");
+  }
+
+  public AttributeList setAttributes(AttributeList attributes) {
+    return new AttributeList();
+  }
+
+  public Object invoke(String action, Object[] params, String[] signature)
+      throws ReflectionException {
+    if (action.equals("clear")) {
+      this.clear();
+      return null;
+    }
+    throw new ReflectionException(new NoSuchMethodException(action));
+  }
+
+  // forget every count and latency
+  void clear() {
+    for (LongAdder counter : new LongAdder[] {this.moves, this.floodedCells, this.frames,
+        this.ticks, this.resets}) {
+      counter.reset();
+    }
+    this.tickLatency.clear();
+    this.sceneLatency.clear();
+    this.moveLatency.clear();
+  }
+
+  public MBeanInfo getMBeanInfo() {
+    MBeanAttributeInfo[] attributes = new MBeanAttributeInfo[this.names.length];
+    for (int i = 0; i < this.names.length; i++) {
+      String name = this.names[i];
+      String type = name.endsWith("Histogram") ? long[].class.getName()
+          : name.endsWith("Second") || name.endsWith("Micros") ? "double" : "long";
+      attributes[i] = new MBeanAttributeInfo(name, type, name, true, false, false);
+    }
+    return new MBeanInfo(this.getClass().getName(), "Flood-It counters and latencies",
+        attributes, null,
+        new MBeanOperationInfo[] {new MBeanOperationInfo("clear", "Forget everything",
+            null, "void", MBeanOperationInfo.ACTION)},
+        null);
+  }
+}
+
+class ExamplesFloodItMetrics {
+
+  // test the buckets and percentiles of a histogram
+  void testHistogram(Tester t) {
+    LatencyHistogram histogram = new LatencyHistogram();
+    t.checkExpect(histogram.percentile(0.99), 0.0);
+    for (int i = 0; i < 99; i++) {
+      histogram.record(1500);
+    }
+    histogram.record(1000000);
+    // 1500 ns lies in [1024, 2048) and 1 ms in [2^19, 2^20)
+    t.checkExpect(histogram.counts()[10], 99L);
+    t.checkExpect(histogram.counts()[19], 1L);
+    t.checkExpect(histogram.percentile(0.5), 2.048);
+    t.checkExpect(histogram.percentile(0.99), 2.048);
+    t.checkExpect(histogram.percentile(1.0), 1048.576);
+    histogram.record(0);
+    t.checkExpect(histogram.counts()[0], 1L);
+    histogram.clear();
+    t.checkExpect(histogram.percentile(0.5), 0.0);
+  }
+
+  // test that playing a game is counted and can be read through JMX
+  void testMetrics(Tester t) throws Exception {
+    FloodItMetrics metrics = FloodItMetrics.shared;
+    long moves = metrics.moves.sum();
+    long ticks = metrics.ticks.sum();
+    long frames = metrics.frames.sum();
+    long resets = metrics.resets.sum();
+    long cells = metrics.floodedCells.sum();
+
+    FloodItWorld world = new FloodItWorld(10, 4, false, 2L);
+    world.makeScene();
+    world.onMousePressed(new Posn(world.board.get(99).x, world.board.get(99).y));
+    while (world.animating) {
+      world.onTick();
+      world.makeScene();
+    }
+    world.instantMoves = true;
+    world.onMousePressed(new Posn(world.board.get(99).x, world.board.get(99).y));
+    world.onKeyEvent("r");
+
+    t.checkExpect(metrics.moves.sum() - moves, 2L);
+    t.checkExpect(metrics.ticks.sum() > ticks, true);
+    t.checkExpect(metrics.frames.sum() > frames, true);
+    t.checkExpect(metrics.resets.sum() - resets, 1L);
+    t.checkExpect(metrics.floodedCells.sum() > cells, true);
+
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = new ObjectName("FloodIt:type=Metrics");
+    t.checkExpect(server.getAttribute(name, "Moves"), metrics.moves.sum());
+    t.checkExpect((Double) server.getAttribute(name, "MoveP99Micros") > 0, true);
+    t.checkExpect(((long[]) server.getAttribute(name, "TickLatencyHistogram")).length, 64);
+    t.checkExpect((Double) server.getAttribute(name, "FramesPerSecond") >= 0, true);
+    t.checkExpect(server.getMBeanInfo(name).getAttributes().length, metrics.names.length);
+  }
+
+  // test that a move past the last attempt, which loses before it is shown,
+  // is still counted
+  void testLostMoveCounted(Tester t) {
+    FloodItMetrics metrics = FloodItMetrics.shared;
+    FloodItWorld world = new FloodItWorld(10, 4, false, 2L);
+    while (!world.isQuiescent()) {
+      world.onTick();
+    }
+    world.engine.maxAttempts = 0;
+    long moves = metrics.moves.sum();
+    int cell = new ExamplesFloodIt().unfloodedCellNot(world, world.engine.clickedColor);
+    world.onMousePressed(new Posn(world.board.get(cell).x, world.board.get(cell).y));
+    t.checkExpect(world.engine.isLost(), true);
+    world.onTick();
+    t.checkExpect(world.gameOver, true);
+    t.checkExpect(world.moveInFlight, false);
+    t.checkExpect(metrics.moves.sum() - moves, 1L);
+  }
+
+  // test that the events of a game are recorded by Flight Recorder
+  void testEvents(Tester t) throws Exception {
+    Path file = Files.createTempFile("floodit", ".jfr");
+    try (Recording recording = new Recording()) {
+      recording.enable("floodit.Tick");
+      recording.enable("floodit.Scene");
+      recording.enable("floodit.Move");
+      recording.start();
+
+      FloodItWorld world = new FloodItWorld(6, 3, false, 4L);
+      world.makeScene();
+      // the cell next to the top left one, so the move floods at least it
+      world.onMousePressed(new Posn(world.board.get(1).x, world.board.get(1).y));
+      while (world.animating) {
+        world.onTick();
+        world.makeScene();
+      }
+      recording.stop();
+      recording.dump(file);
+    }
+
+    List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+    Files.delete(file);
+    ArrayList<String> names = new ArrayList<String>();
+    int captured = 0;
+    for (RecordedEvent e : events) {
+      String name = e.getEventType().getName();
+      if (name.startsWith("floodit.")) {
+        names.add(name);
+      }
+      if (name.equals("floodit.Tick")) {
+        t.checkExpect(e.getInt("cellsRecolored") > 0, true);
+        captured += e.getInt("cellsCaptured");
+      }
+      if (name.equals("floodit.Move")) {
+        t.checkExpect(e.getInt("row"), 0);
+        t.checkExpect(e.getInt("col"), 1);
+        t.checkExpect(e.getInt("cellsCaptured") > 0, true);
+        t.checkExpect(e.getInt("attempts"), 1);
+        t.checkExpect(e.getBoolean("instant"), false);
+      }
+    }
+    t.checkExpect(names.contains("floodit.Tick"), true);
+    t.checkExpect(names.contains("floodit.Scene"), true);
+    t.checkExpect(names.indexOf("floodit.Move"), names.lastIndexOf("floodit.Move"));
+    t.checkExpect(names.contains("floodit.Move"), true);
+    t.checkExpect(captured > 0, true);
+  }
+}
@@ -0,0 +1,463 @@
+import tester.Tester;
+
+import java.util.Arrays;
+
+// The board compressed into its regions: every group of connected cells of the
+// same color is one region, and two regions are neighbors when any of their
+// cells are. A move only ever floods whole regions, so this is all a solver
+// needs to know about a board.
+class RegionGraph {
+  // size of the board
+  int size;
+
+  // number of colors on the board
+  int numColors;
+
+  // number of regions
+  int numRegions;
+
+  // the region of every cell
+  int[] regionOf;
+
+  // the palette index of every region
+  int[] regionColor;
+
+  // the number of cells in every region
+  int[] regionSize;
+
+  // the neighbors of region r are neighbors[neighborStart[r] .. neighborStart[r + 1]),
+  // in increasing order
+  int[] neighborStart;
+  int[] neighbors;
+
+  // number of cells on the board
+  int numCells;
+
+  // the cells of region r are cells[cellStart[r] .. cellStart[r + 1])
+  int[] cells;
+  int[] cellStart;
+
+  // the last region each region was found next to, so it is listed once
+  int[] seenFrom;
+
+  // the most cells of a board this graph can be loaded with without making
+  // its arrays again
+  int capacity = 0;
+
+  // an empty graph, with room for boards of up to the given number of cells
+  RegionGraph(int numCells, int numColors) {
+    this.numColors = numColors;
+    this.allocate(numCells);
+  }
+
+  // constructor, labelling the regions of the given grid
+  RegionGraph(FloodItBoard grid, int numColors) {
+    this(grid.numCells, numColors);
+    this.load(grid, numColors);
+
+    // a graph of one board keeps arrays only as long as its regions need
+    this.regionColor = Arrays.copyOf(this.regionColor, this.numRegions);
+    this.regionSize = Arrays.copyOf(this.regionSize, this.numRegions);
+    this.cellStart = Arrays.copyOf(this.cellStart, this.numRegions + 1);
+    this.neighborStart = Arrays.copyOf(this.neighborStart, this.numRegions + 1);
+    this.neighbors = Arrays.copyOf(this.neighbors, this.neighborStart[this.numRegions]);
+    this.seenFrom = null;
+    this.capacity = 0;
+  }
+
+  // the regions of the grid an engine is playing on
+  RegionGraph(FloodItEngine engine) {
+    this(engine.grid, engine.numColors);
+  }
+
+  // make the arrays for boards of up to the given number of cells
+  void allocate(int numCells) {
+    this.capacity = numCells;
+    this.regionOf = new int[numCells];
+    this.regionColor = new int[numCells];
+    this.regionSize = new int[numCells];
+    this.cells = new int[numCells];
+    this.cellStart = new int[numCells + 1];
+    this.neighborStart = new int[numCells + 1];
+    this.neighbors = new int[4 * numCells];
+    this.seenFrom = new int[numCells];
+  }
+
+  // label the regions of the given grid, which has the given number of
+  // colors, in place of the board loaded last; nothing is allocated unless
+  // the grid is bigger than any loaded before
+  void load(FloodItBoard grid, int numColors) {
+    if (grid.numCells > this.capacity) {
+      this.allocate(grid.numCells);
+    }
+    this.size = grid.size;
+    this.numCells = grid.numCells;
+    this.numColors = numColors;
+    this.label(grid);
+    this.connect(grid);
+  }
+
+  // give every cell the number of its region, numbering regions in the order
+  // their first cell comes on the board, so the top left cell is in region 0,
+  // and list the cells of every region
+  void label(FloodItBoard grid) {
+    Arrays.fill(this.regionOf, 0, grid.numCells, -1);
+    int count = 0;
+    int end = 0;
+    for (int start = 0; start < grid.numCells; start++) {
+      if (this.regionOf[start] >= 0) {
+        continue;
+      }
+      int color = grid.getColor(start);
+      this.regionColor[count] = color;
+      this.cellStart[count] = end;
+      this.regionOf[start] = count;
+      this.cells[end] = start;
+      end++;
+
+      // the cells of the region found so far are the queue of the fill
+      for (int next = this.cellStart[count]; next < end; next++) {
+        int index = this.cells[next];
+        end = this.take(grid, grid.left(index), color, count, end);
+        end = this.take(grid, grid.top(index), color, count, end);
+        end = this.take(grid, grid.right(index), color, count, end);
+        end = this.take(grid, grid.bottom(index), color, count, end);
+      }
+      this.regionSize[count] = end - this.cellStart[count];
+      count++;
+    }
+    this.cellStart[count] = end;
+    this.numRegions = count;
+  }
+
+  // put the given cell in the given region if it is of its color and in no
+  // region yet; returns the new number of cells listed
+  int take(FloodItBoard grid, int index, int color, int region, int end) {
+    if (index < 0 || this.regionOf[index] >= 0 || grid.getColor(index) != color) {
+      return end;
+    }
+    this.regionOf[index] = region;
+    this.cells[end] = index;
+    return end + 1;
+  }
+
+  // find the neighbors of every region
+  void connect(FloodItBoard grid) {
+    Arrays.fill(this.seenFrom, 0, this.numRegions, -1);
+    int count = 0;
+    for (int r = 0; r < this.numRegions; r++) {
+      this.neighborStart[r] = count;
+      for (int i = this.cellStart[r]; i < this.cellStart[r + 1]; i++) {
+        int index = this.cells[i];
+        count = this.link(grid.left(index), r, count);
+        count = this.link(grid.top(index), r, count);
+        count = this.link(grid.right(index), r, count);
+        count = this.link(grid.bottom(index), r, count);
+      }
+      Arrays.sort(this.neighbors, this.neighborStart[r], count);
+    }
+    this.neighborStart[this.numRegions] = count;
+  }
+
+  // list the region of the given cell as a neighbor of the given region, unless
+  // it is that region or already listed; returns the new number of neighbors
+  int link(int index, int region, int count) {
+    if (index < 0) {
+      return count;
+    }
+    int other = this.regionOf[index];
+    if (other == region || this.seenFrom[other] == region) {
+      return count;
+    }
+    this.seenFrom[other] = region;
+    this.neighbors[count] = other;
+    return count + 1;
+  }
+
+  // the number of neighbors of the given region
+  int degree(int region) {
+    return this.neighborStart[region + 1] - this.neighborStart[region];
+  }
+
+  // the i-th neighbor of the given region
+  int neighbor(int region, int i) {
+    return this.neighbors[this.neighborStart[region] + i];
+  }
+}
+
+// A game of Flood-It played on the regions of a board instead of its cells.
+// Flooded regions are one bit each, and the regions next to the flooded ones
+// are kept in one list per color, so a move only touches the regions it
+// floods and their neighbors.
+class RegionEngine {
+  // the regions of the board being played
+  RegionGraph graph;
+
+  // flooded regions, 64 per word
+  long[] flooded;
+
+  // regions next to the flooded ones, 64 per word
+  long[] bordering;
+
+  // the bordering regions of each color, in frontier[c][0 .. frontierCount[c])
+  int[][] frontier;
+  int[] frontierCount;
+
+  // number of flooded cells
+  int floodedCells = 0;
+
+  // palette index of the flooded regions
+  int floodColor;
+
+  // number of attempts
+  int attempts = 0;
+
+  // maximum number of attempts
+  int maxAttempts;
+
+  // constructor, starting with the region of the top left cell flooded and
+  // allowing as many attempts as a FloodItEngine would on the same board
+  RegionEngine(RegionGraph graph) {
+    this.graph = graph;
+    this.flooded = new long[(graph.numRegions + 63) >>> 6];
+    this.bordering = new long[(graph.numRegions + 63) >>> 6];
+    this.frontier = new int[graph.numColors][4];
+    this.frontierCount = new int[graph.numColors];
+    this.maxAttempts = FloodItEngine.allowedAttempts(graph.size, graph.numColors,
+        graph.numCells <= FloodItEngine.maxEstimatedCells
+            ? new DifficultyEstimate(graph).greedyMoves() : -1);
+    this.floodColor = graph.regionColor[0];
+    this.floodRegion(0);
+  }
+
+  // the regions of the board an engine is playing on, with its attempts so far
+  RegionEngine(FloodItEngine engine) {
+    this(new RegionGraph(engine));
+    this.attempts = engine.attempts;
+    this.maxAttempts = engine.maxAttempts;
+  }
+
+  // is the given region flooded?
+  boolean isFloodedRegion(int region) {
+    return (this.flooded[region >>> 6] & (1L << region)) != 0;
+  }
+
+  // flood the given region and put its neighbors on the frontier
+  void floodRegion(int region) {
+    this.flooded[region >>> 6] |= 1L << region;
+    this.floodedCells += this.graph.regionSize[region];
+    for (int i = 0; i < this.graph.degree(region); i++) {
+      int n = this.graph.neighbor(region, i);
+      if (!this.isFloodedRegion(n) && (this.bordering[n >>> 6] & (1L << n)) == 0) {
+        this.bordering[n >>> 6] |= 1L << n;
+        int color = this.graph.regionColor[n];
+        if (this.frontierCount[color] == this.frontier[color].length) {
+          this.frontier[color] = Arrays.copyOf(this.frontier[color],
+              2 * this.frontier[color].length);
+        }
+        this.frontier[color][this.frontierCount[color]] = n;
+        this.frontierCount[color]++;
+      }
+    }
+  }
+
+  // flood every region of the given color next to the flooded ones,
+  // returning the number of cells flooded
+  int applyMove(int color) {
+    this.attempts++;
+    this.floodColor = color;
+    int before = this.floodedCells;
+    // regions of one color are never neighbors, so flooding them only adds
+    // regions of other colors to the frontier
+    int count = this.frontierCount[color];
+    this.frontierCount[color] = 0;
+    for (int i = 0; i < count; i++) {
+      this.floodRegion(this.frontier[color][i]);
+    }
+    return this.floodedCells - before;
+  }
+
+  // the number of regions of the given color a move could flood right now
+  int frontierSize(int color) {
+    return this.frontierCount[color];
+  }
+
+  // number of moves made so far
+  int movesUsed() {
+    return this.attempts;
+  }
+
+  // is every cell flooded?
+  boolean isWon() {
+    return this.floodedCells == this.graph.numCells;
+  }
+
+  // have more moves been made than allowed?
+  boolean isLost() {
+    return this.attempts > this.maxAttempts;
+  }
+
+  // the palette index of the cell at the given row and column
+  int colorAt(int row, int col) {
+    int region = this.graph.regionOf[(row * this.graph.size) + col];
+    return this.isFloodedRegion(region) ? this.floodColor : this.graph.regionColor[region];
+  }
+
+  // is the cell at the given row and column flooded?
+  boolean isFloodedAt(int row, int col) {
+    return this.isFloodedRegion(this.graph.regionOf[(row * this.graph.size) + col]);
+  }
+}
+
+class ExamplesFloodItRegions {
+
+  // a 4 by 4 board:
+  // 0 0 1 1
+  // 2 0 1 2
+  // 2 2 2 2
+  // 0 1 1 0
+  FloodItEngine engine;
+  RegionGraph graph;
+
+  // initialize the data
+  void initData() {
+    this.engine = new FloodItEngine(4, 3, 1L);
+    int[] colors = {0, 0, 1, 1, 2, 0, 1, 2, 2, 2, 2, 2, 0, 1, 1, 0};
+    for (int i = 0; i < colors.length; i++) {
+      this.engine.grid.setColor(i, colors[i]);
+    }
+    this.engine.recount();
+    this.engine.clickedColor = 0;
+    this.engine.finishWave();
+    this.graph = new RegionGraph(this.engine);
+  }
+
+  // test labelling the regions
+  void testRegions(Tester t) {
+    this.initData();
+
+    t.checkExpect(this.graph.numRegions, 6);
+    t.checkExpect(this.graph.regionOf,
+        new int[] {0, 0, 1, 1, 2, 0, 1, 2, 2, 2, 2, 2, 3, 4, 4, 5});
+    t.checkExpect(this.graph.regionColor, new int[] {0, 1, 2, 0, 1, 0});
+    t.checkExpect(this.graph.regionSize, new int[] {3, 3, 6, 1, 2, 1});
+  }
+
+  // test finding the neighbors of the regions
+  void testNeighbors(Tester t) {
+    this.initData();
+
+    t.checkExpect(this.graph.degree(0), 2);
+    t.checkExpect(this.graph.neighbor(0, 0), 1);
+    t.checkExpect(this.graph.neighbor(0, 1), 2);
+    t.checkExpect(this.graph.degree(1), 2);
+    t.checkExpect(this.graph.degree(2), 5);
+    t.checkExpect(this.graph.degree(3), 2);
+    t.checkExpect(this.graph.neighbor(3, 0), 2);
+    t.checkExpect(this.graph.neighbor(3, 1), 4);
+    t.checkExpect(this.graph.degree(5), 2);
+  }
+
+  // test that a graph loaded with board after board labels each as a graph
+  // of its own would, without allocating once it is big enough
+  void testLoad(Tester t) {
+    RegionGraph loaded = new RegionGraph(16, 3);
+    for (long seed = 0; seed < 5; seed++) {
+      FloodItEngine engine = FloodItEngine.newGame(26, 6, seed);
+      RegionGraph expected = new RegionGraph(engine);
+      loaded.load(engine.grid, engine.numColors);
+      t.checkExpect(loaded.numRegions, expected.numRegions);
+      t.checkExpect(loaded.numCells, 26 * 26);
+      t.checkExpect(loaded.regionOf, expected.regionOf);
+      t.checkExpect(Arrays.copyOf(loaded.regionColor, loaded.numRegions), expected.regionColor);
+      t.checkExpect(Arrays.copyOf(loaded.regionSize, loaded.numRegions), expected.regionSize);
+      t.checkExpect(Arrays.copyOf(loaded.neighbors, loaded.neighborStart[loaded.numRegions]),
+          expected.neighbors);
+    }
+
+    // a smaller board fits in the same arrays
+    FloodItEngine small = FloodItEngine.newGame(4, 3, 1L);
+    loaded.load(small.grid, 3);
+    t.checkExpect(loaded.capacity, 26 * 26);
+    t.checkExpect(loaded.numRegions, new RegionGraph(small).numRegions);
+
+    java.lang.management.ThreadMXBean threads =
+        java.lang.management.ManagementFactory.getThreadMXBean();
+    if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+      return;
+    }
+    com.sun.management.ThreadMXBean counter = (com.sun.management.ThreadMXBean) threads;
+    long thread = Thread.currentThread().getId();
+    FloodItEngine engine = FloodItEngine.newGame(26, 6, 9L);
+    for (int i = 0; i < 1000; i++) {
+      loaded.load(engine.grid, 6);
+    }
+    long before = counter.getThreadAllocatedBytes(thread);
+    for (int i = 0; i < 100; i++) {
+      loaded.load(engine.grid, 6);
+    }
+    t.checkExpect(counter.getThreadAllocatedBytes(thread) - before, 0L);
+  }
+
+  // test playing moves on the regions
+  void testRegionEngine(Tester t) {
+    this.initData();
+    RegionEngine game = new RegionEngine(this.graph);
+
+    t.checkExpect(game.floodedCells, 3);
+    t.checkExpect(game.frontierSize(1), 1);
+    t.checkExpect(game.frontierSize(2), 1);
+    t.checkExpect(game.frontierSize(0), 0);
+
+    // nothing of color 0 borders the flooded region
+    t.checkExpect(game.applyMove(0), 0);
+    t.checkExpect(game.applyMove(2), 6);
+    t.checkExpect(game.colorAt(0, 0), 2);
+    t.checkExpect(game.isFloodedAt(2, 3), true);
+    t.checkExpect(game.isFloodedAt(3, 0), false);
+    t.checkExpect(game.frontierSize(0), 2);
+    t.checkExpect(game.frontierSize(1), 2);
+    t.checkExpect(game.applyMove(1), 5);
+    t.checkExpect(game.isWon(), false);
+    t.checkExpect(game.applyMove(0), 2);
+    t.checkExpect(game.isWon(), true);
+    t.checkExpect(game.movesUsed(), 4);
+    t.checkExpect(game.colorAt(3, 3), 0);
+  }
+
+  // test that a game on the regions allows as many attempts as one on the cells
+  void testMaxAttempts(Tester t) {
+    for (long seed = 0; seed < 5; seed++) {
+      FloodItEngine engine = new FloodItEngine(14, 6, seed);
+      t.checkExpect(new RegionEngine(new RegionGraph(engine)).maxAttempts, engine.maxAttempts);
+    }
+    FloodItEngine big = new FloodItEngine(70, 5, 1L);
+    t.checkExpect(new RegionEngine(new RegionGraph(big)).maxAttempts, 70 + 2 * 23);
+    t.checkExpect(big.maxAttempts, 70 + 2 * 23);
+
+    // part way through a game the attempts are the engine's
+    FloodItEngine played = FloodItEngine.newGame(14, 6, 3L);
+    played.applyMove(2);
+    RegionEngine regions = new RegionEngine(played);
+    t.checkExpect(regions.attempts, 1);
+    t.checkExpect(regions.maxAttempts, played.maxAttempts);
+  }
+
+  // test that moves on the regions flood the same cells as moves on the cells
+  void testMatchesEngine(Tester t) {
+    FloodItEngine cells = FloodItEngine.newGame(26, 8, 5L);
+    RegionEngine regions = new RegionEngine(cells);
+    for (int move = 0; move < 40; move++) {
+      int color = (move * 5) % 8;
+      t.checkExpect(regions.applyMove(color), cells.applyMove(color));
+      t.checkExpect(regions.floodedCells, cells.floodedCount);
+    }
+    for (int row = 0; row < 26; row++) {
+      for (int col = 0; col < 26; col++) {
+        t.checkExpect(regions.isFloodedAt(row, col), cells.isFloodedAt(row, col));
+        t.checkExpect(regions.colorAt(row, col), cells.colorAt(row, col));
+      }
+    }
+    t.checkExpect(regions.isWon(), cells.isWon());
+  }
+}
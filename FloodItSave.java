@@ -0,0 +1,410 @@
+import tester.Tester;
+
+import java.awt.Color;
+import java.nio.ByteBuffer;
+
+// A game of Flood-It saved in a few bits per cell, read straight out of the
+// buffer it was saved to. The layout, big endian from the start of the save:
+//
+//   0  int   magic number, "FLIT"
+//   4  byte  version, 2
+//   5  byte  number of colors less one, so 256 colors fit
+//   6  byte  bits per cell, the fewest that hold every palette index
+//   7  byte  1 for a large board, else 0
+//   8  int   size
+//  12  int   attempts
+//  16  int   maximum attempts
+//  20  long  seed of the board
+//  28  int   RGB of each color of the game, in palette index order
+//   .  long  palette index of every cell, bits per cell each, packed from the
+//            lowest bit of each word up and spilling over into the next word
+//   .  long  flood state of every cell, 64 cells per word
+//
+// A save can be taken while a move is still spreading without touching the
+// game: the cells the move floods are known once it starts, so they are saved
+// with the color they are turning, as if the move were finished.
+class SavedGame {
+  static final int magic = 0x464C4954;
+
+  static final int version = 2;
+
+  // where the colors start, after the header and before the palette
+  static final int headerBytes = 28;
+
+  // the buffer holding the save, and where in it the save starts
+  ByteBuffer buffer;
+  int base;
+
+  // read from the header
+  int numColors;
+  int bitsPerCell;
+  int size;
+  int numCells;
+
+  // where the packed colors and the flood state start, from the start of the save
+  int colorsOffset;
+  int floodedOffset;
+
+  // a view of the save that starts at the position of the given buffer;
+  // nothing is copied out of it until the game is restored
+  SavedGame(ByteBuffer buffer) {
+    this.buffer = buffer;
+    this.base = buffer.position();
+    if (buffer.remaining() < SavedGame.headerBytes
+        || buffer.getInt(this.base) != SavedGame.magic
+        || buffer.get(this.base + 4) != SavedGame.version) {
+      throw new IllegalArgumentException("Not a saved Flood-It game");
+    }
+    this.numColors = (buffer.get(this.base + 5) & 0xFF) + 1;
+    this.bitsPerCell = buffer.get(this.base + 6);
+    this.size = buffer.getInt(this.base + 8);
+    // only a header an engine could have written is read any further, so the
+    // offsets below can't overflow or point past the save
+    if (this.numColors < 3 || this.bitsPerCell != SavedGame.bitsPerCell(this.numColors)
+        || this.size < 2 || this.size > 16384) {
+      throw new IllegalArgumentException("Not a saved Flood-It game");
+    }
+    this.numCells = this.size * this.size;
+    this.colorsOffset = SavedGame.headerBytes + 4 * this.numColors;
+    this.floodedOffset = this.colorsOffset
+        + 8 * SavedGame.colorWords(this.numCells, this.bitsPerCell);
+    if (buffer.remaining() < SavedGame.bytesFor(this.size, this.numColors)) {
+      throw new IllegalArgumentException("The saved game is cut short");
+    }
+  }
+
+  // the fewest bits that hold every palette index
+  static int bitsPerCell(int numColors) {
+    return 32 - Integer.numberOfLeadingZeros(numColors - 1);
+  }
+
+  // the number of words the packed colors take
+  static int colorWords(int numCells, int bitsPerCell) {
+    return (int) (((long) numCells * bitsPerCell + 63) >>> 6);
+  }
+
+  // the number of bytes a save of a board of the given size and number of colors takes
+  static int bytesFor(int size, int numColors) {
+    int numCells = size * size;
+    return SavedGame.headerBytes + 4 * numColors
+        + 8 * SavedGame.colorWords(numCells, SavedGame.bitsPerCell(numColors))
+        + 8 * ((numCells + 63) >>> 6);
+  }
+
+  // save the given world into a new buffer
+  static ByteBuffer save(FloodItWorld world) {
+    ByteBuffer buffer = ByteBuffer.allocate(SavedGame.bytesFor(world.size, world.numColors));
+    SavedGame.write(world, buffer);
+    buffer.flip();
+    return buffer;
+  }
+
+  // save the given world at the position of the given buffer, moving the
+  // position past the save
+  static void write(FloodItWorld world, ByteBuffer buffer) {
+    FloodItEngine engine = world.engine;
+    boolean spreading = engine.isSpreading() && !engine.wavePending;
+    int bits = SavedGame.bitsPerCell(engine.numColors);
+
+    buffer.putInt(SavedGame.magic);
+    buffer.put((byte) SavedGame.version);
+    buffer.put((byte) (engine.numColors - 1));
+    buffer.put((byte) bits);
+    buffer.put((byte) (world.largeBoard ? 1 : 0));
+    buffer.putInt(engine.size);
+    buffer.putInt(engine.attempts);
+    buffer.putInt(engine.maxAttempts);
+    buffer.putLong(engine.seed);
+    for (int i = 0; i < engine.numColors; i++) {
+      buffer.putInt(world.gameColors.get(i).getRGB());
+    }
+
+    // fill each word from its lowest bit up, carrying what doesn't fit into the next
+    long word = 0;
+    int used = 0;
+    for (int i = 0; i < engine.grid.numCells; i++) {
+      long color = spreading && engine.grid.isFlooded(i) ? engine.clickedColor
+          : engine.grid.getColor(i);
+      word |= color << used;
+      used += bits;
+      if (used >= 64) {
+        buffer.putLong(word);
+        used -= 64;
+        word = used == 0 ? 0 : color >>> (bits - used);
+      }
+    }
+    if (used > 0) {
+      buffer.putLong(word);
+    }
+
+    for (long flooded : engine.grid.flooded) {
+      buffer.putLong(flooded);
+    }
+  }
+
+  // the attempts made
+  int attempts() {
+    return this.buffer.getInt(this.base + 12);
+  }
+
+  // the most attempts allowed
+  int maxAttempts() {
+    return this.buffer.getInt(this.base + 16);
+  }
+
+  // the seed the board was first colored from
+  long seed() {
+    return this.buffer.getLong(this.base + 20);
+  }
+
+  // was the game played on a large board?
+  boolean largeBoard() {
+    return this.buffer.get(this.base + 7) == 1;
+  }
+
+  // the color of the given palette index
+  Color paletteColor(int index) {
+    return new Color(this.buffer.getInt(this.base + SavedGame.headerBytes + 4 * index));
+  }
+
+  // the palette index of the given cell
+  int color(int index) {
+    long bit = (long) index * this.bitsPerCell;
+    int at = this.base + this.colorsOffset + (int) ((bit >>> 6) << 3);
+    int shift = (int) (bit & 63);
+    long value = this.buffer.getLong(at) >>> shift;
+    if (shift + this.bitsPerCell > 64) {
+      value |= this.buffer.getLong(at + 8) << (64 - shift);
+    }
+    return (int) (value & ((1L << this.bitsPerCell) - 1));
+  }
+
+  // is the given cell flooded?
+  boolean isFlooded(int index) {
+    long word = this.buffer.getLong(this.base + this.floodedOffset + ((index >>> 6) << 3));
+    return (word & (1L << index)) != 0;
+  }
+
+  // the palette index of the cell at the given row and column
+  int colorAt(int row, int col) {
+    return this.color((row * this.size) + col);
+  }
+
+  // is the cell at the given row and column flooded?
+  boolean isFloodedAt(int row, int col) {
+    return this.isFlooded((row * this.size) + col);
+  }
+
+  // copy the saved game into an engine of the same size and number of colors,
+  // which is left between moves
+  void restore(FloodItEngine engine) {
+    if (engine.size != this.size || engine.numColors != this.numColors) {
+      throw new IllegalArgumentException("The engine is not the size of the saved game");
+    }
+    for (int i = 0; i < this.numCells; i++) {
+      engine.grid.setColor(i, this.color(i));
+    }
+    for (int w = 0; w < engine.grid.flooded.length; w++) {
+      engine.grid.flooded[w] = this.buffer.getLong(this.base + this.floodedOffset + (w << 3));
+    }
+    engine.seed = this.seed();
+    engine.attempts = this.attempts();
+    engine.maxAttempts = this.maxAttempts();
+    // a game saved before its first wave only has the top left cell flooded,
+    // so the wave from it is spread again, which floods nothing in any other save
+    engine.clickedColor = engine.grid.getColor(0);
+    engine.startWave();
+    engine.finishWave();
+    engine.recount();
+    engine.captured = 0;
+  }
+
+  // a new engine playing the saved game
+  FloodItEngine engine() {
+    FloodItEngine engine = new FloodItEngine(this.size, this.numColors, this.seed());
+    this.restore(engine);
+    return engine;
+  }
+
+  // a new world showing the saved game with the colors it was saved with
+  FloodItWorld world() {
+    FloodItWorld world = new FloodItWorld(this.size, this.numColors, this.largeBoard(),
+        this.seed());
+    world.colors.clear();
+    for (Color c : world.palette) {
+      world.colors.add(c);
+    }
+    world.gameColors.clear();
+    world.cellImages.clear();
+    for (int i = 0; i < this.numColors; i++) {
+      world.addGameColor(this.paletteColor(i));
+    }
+    this.restore(world.engine);
+    world.refreshView();
+    world.shownAttempts = -1;
+    world.isGameOver();
+    return world;
+  }
+}
+
+class ExamplesFloodItSave {
+
+  // a world part way through a game
+  FloodItWorld played(int size, int numColors, long seed, int moves) {
+    FloodItWorld world = new FloodItWorld(size, numColors, size > 26, seed);
+    for (int i = 0; i < moves; i++) {
+      world.engine.applyMove((world.engine.grid.getColor(0) + 1) % numColors);
+    }
+    world.refreshView();
+    return world;
+  }
+
+  // test the number of bits each cell takes
+  void testBitsPerCell(Tester t) {
+    t.checkExpect(SavedGame.bitsPerCell(3), 2);
+    t.checkExpect(SavedGame.bitsPerCell(4), 2);
+    t.checkExpect(SavedGame.bitsPerCell(5), 3);
+    t.checkExpect(SavedGame.bitsPerCell(8), 3);
+    t.checkExpect(SavedGame.bitsPerCell(40), 6);
+    t.checkExpect(SavedGame.bitsPerCell(256), 8);
+    // 26 x 26 cells at 3 bits, 11 flood words and 8 colors
+    t.checkExpect(SavedGame.bytesFor(26, 8), 28 + 32 + 8 * 32 + 8 * 11);
+    t.checkExpect(SavedGame.save(this.played(26, 8, 1L, 3)).remaining(),
+        SavedGame.bytesFor(26, 8));
+  }
+
+  // test that a saved game is read back as it was
+  void testRoundTrip(Tester t) {
+    for (int colors : new int[] {3, 4, 5, 6, 7, 8, 40, 256}) {
+      FloodItWorld world = this.played(14, colors, colors, 5);
+      ByteBuffer buffer = SavedGame.save(world);
+      SavedGame saved = new SavedGame(buffer);
+
+      t.checkExpect(saved.size, 14);
+      t.checkExpect(saved.numColors, colors);
+      t.checkExpect(saved.attempts(), 5);
+      t.checkExpect(saved.maxAttempts(), world.engine.maxAttempts);
+      t.checkExpect(saved.seed(), world.engine.seed);
+      t.checkExpect(saved.largeBoard(), false);
+      for (int i = 0; i < colors; i++) {
+        t.checkExpect(saved.paletteColor(i), world.gameColors.get(i));
+      }
+      for (int row = 0; row < 14; row++) {
+        for (int col = 0; col < 14; col++) {
+          t.checkExpect(saved.colorAt(row, col), world.engine.colorAt(row, col));
+          t.checkExpect(saved.isFloodedAt(row, col), world.engine.isFloodedAt(row, col));
+        }
+      }
+
+      FloodItWorld loaded = saved.world();
+      t.checkExpect(loaded.gameColors, world.gameColors);
+      t.checkExpect(loaded.engine.grid.colors, world.engine.grid.colors);
+      t.checkExpect(loaded.engine.grid.flooded, world.engine.grid.flooded);
+      t.checkExpect(loaded.engine.attempts, 5);
+      t.checkExpect(loaded.engine.floodedCount, world.engine.floodedCount);
+      t.checkExpect(loaded.engine.remaining, world.engine.remaining);
+      t.checkExpect(loaded.engine.isSpreading(), false);
+      for (int i = 0; i < loaded.board.size(); i++) {
+        t.checkExpect(loaded.board.get(i).color, world.board.get(i).color);
+      }
+
+      // the game goes on the same way after loading
+      loaded.engine.applyMove(2);
+      world.engine.applyMove(2);
+      t.checkExpect(loaded.engine.grid.flooded, world.engine.grid.flooded);
+    }
+  }
+
+  // test that a save during a wave leaves the wave to the world, which still
+  // ends the game and makes the moves queued behind it
+  void testSaveMidWave(Tester t) {
+    ExamplesFloodIt examples = new ExamplesFloodIt();
+    FloodItWorld world = new FloodItWorld(5, 3, false, 4L);
+    ByteBuffer first = SavedGame.save(world);
+    t.checkExpect(world.engine.wavePending, true);
+    t.checkExpect(new SavedGame(first).engine().grid.flooded,
+        FloodItEngine.newGame(5, 3, world.engine.seed).grid.flooded);
+    while (!world.isQuiescent()) {
+      world.onTick();
+    }
+
+    int[] greedy = new FloodItSolver(world.engine).greedy();
+    t.checkExpect(greedy.length <= 5, true);
+    for (int c : greedy) {
+      examples.click(world, examples.unfloodedCellOf(world, c));
+    }
+    t.checkExpect(world.queuedCount, greedy.length - 1);
+    t.checkExpect(world.engine.isSpreading(), true);
+
+    // the save holds the board as it is once the first move is finished
+    SavedGame saved = new SavedGame(SavedGame.save(world));
+    t.checkExpect(world.engine.isSpreading(), true);
+    FloodItEngine expected = FloodItEngine.newGame(5, 3, world.engine.seed);
+    expected.applyMove(greedy[0]);
+    FloodItEngine restored = saved.engine();
+    t.checkExpect(restored.grid.colors, expected.grid.colors);
+    t.checkExpect(restored.grid.flooded, expected.grid.flooded);
+    t.checkExpect(restored.attempts, 1);
+
+    while (!world.isQuiescent()) {
+      world.onTick();
+    }
+    t.checkExpect(world.queuedCount, 0);
+    t.checkExpect(world.engine.attempts, greedy.length);
+    t.checkExpect(world.gameOver, true);
+    t.checkExpect(world.allFlooded, true);
+  }
+
+  // test saves packed one after another into one buffer, read where they lie
+  void testSavesInOneBuffer(Tester t) {
+    FloodItWorld first = this.played(10, 5, 1L, 2);
+    FloodItWorld second = this.played(200, 7, 2L, 4);
+    ByteBuffer buffer = ByteBuffer.allocate(
+        SavedGame.bytesFor(10, 5) + SavedGame.bytesFor(200, 7));
+    SavedGame.write(first, buffer);
+    SavedGame.write(second, buffer);
+    t.checkExpect(buffer.remaining(), 0);
+
+    buffer.flip();
+    SavedGame a = new SavedGame(buffer);
+    buffer.position(SavedGame.bytesFor(10, 5));
+    SavedGame b = new SavedGame(buffer);
+    t.checkExpect(a.buffer == b.buffer, true);
+    t.checkExpect(a.engine().grid.colors, first.engine.grid.colors);
+    t.checkExpect(b.largeBoard(), true);
+    t.checkExpect(b.engine().grid.colors, second.engine.grid.colors);
+    t.checkExpect(b.engine().grid.flooded, second.engine.grid.flooded);
+  }
+
+  // test that anything else is not read as a save
+  void testNotASave(Tester t) {
+    t.checkConstructorException(new IllegalArgumentException("Not a saved Flood-It game"),
+        "SavedGame", ByteBuffer.allocate(64));
+    ByteBuffer cut = SavedGame.save(this.played(6, 4, 1L, 1));
+    cut.limit(cut.limit() - 1);
+    t.checkConstructorException(new IllegalArgumentException("The saved game is cut short"),
+        "SavedGame", cut);
+
+    // headers no engine could have written
+    ByteBuffer save = SavedGame.save(this.played(6, 4, 1L, 1));
+    save.put(6, (byte) 3);
+    t.checkConstructorException(new IllegalArgumentException("Not a saved Flood-It game"),
+        "SavedGame", save);
+    save = SavedGame.save(this.played(6, 4, 1L, 1));
+    save.put(5, (byte) 1);
+    save.put(6, (byte) 1);
+    t.checkConstructorException(new IllegalArgumentException("Not a saved Flood-It game"),
+        "SavedGame", save);
+    for (int size : new int[] {-6, 0, 1, 16385, 1 << 16}) {
+      save = SavedGame.save(this.played(6, 4, 1L, 1));
+      save.putInt(8, size);
+      t.checkConstructorException(new IllegalArgumentException("Not a saved Flood-It game"),
+          "SavedGame", save);
+    }
+
+    t.checkException(
+        new IllegalArgumentException("The engine is not the size of the saved game"),
+        new SavedGame(SavedGame.save(this.played(6, 4, 1L, 1))), "restore",
+        new FloodItEngine(7, 4, 1L));
+  }
+}
@@ -0,0 +1,399 @@
+import tester.Tester;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+// One player's games on the server, played on an engine of its own without
+// anything to draw. It answers one line of the protocol at a time:
+//
+//   NEW size colors [seed]  start a game      OK seed maxAttempts
+//   MOVES c c c ...         play the moves    OK attempts floodedCells PLAYING|WON|LOST
+//   BOARD                   show the board    OK c c c ... (row by row)
+//   QUIT                    hang up           BYE
+//
+// and ERR with the reason for anything it can't do. The moves of one MOVES
+// line are played one after another until the game is over, so a client can
+// send many moves in one round trip.
+class GameSession {
+  // the biggest board a session may play
+  int maxSize;
+
+  // the game being played, or null before the first NEW
+  FloodItEngine engine = null;
+
+  GameSession(int maxSize) {
+    this.maxSize = maxSize;
+  }
+
+  // the answer to one line
+  String handle(String line) {
+    String[] words = line.trim().split("\\s+");
+    try {
+      switch (words[0]) {
+        case "NEW":
+          return this.newGame(words);
+        case "MOVES":
+          return this.moves(words);
+        case "BOARD":
+          return this.board();
+        case "QUIT":
+          return "BYE";
+        default:
+          return "ERR unknown command " + words[0];
+      }
+    } catch (NumberFormatException e) {
+      return "ERR not a number: " + e.getMessage();
+    } catch (IllegalArgumentException e) {
+      return "ERR " + e.getMessage();
+    }
+  }
+
+  // start a game of the given size, number of colors and seed
+  String newGame(String[] words) {
+    if (words.length < 3 || words.length > 4) {
+      return "ERR NEW takes a size, a number of colors and maybe a seed";
+    }
+    int size = Integer.parseInt(words[1]);
+    if (size > this.maxSize) {
+      return "ERR boards are at most " + this.maxSize + " cells across";
+    }
+    int numColors = Integer.parseInt(words[2]);
+    long seed = words.length == 4 ? Long.parseLong(words[3]) : new SplittableRandom().nextLong();
+    this.engine = FloodItEngine.newGame(size, numColors, seed);
+    return "OK " + seed + " " + this.engine.maxAttempts;
+  }
+
+  // play the given moves until the game is over
+  String moves(String[] words) {
+    if (this.engine == null) {
+      return "ERR no game";
+    }
+    for (int i = 1; i < words.length && !this.isOver(); i++) {
+      int color = Integer.parseInt(words[i]);
+      if (color < 0 || color >= this.engine.numColors) {
+        return "ERR no color " + color + "; " + this.status();
+      }
+      this.engine.applyMove(color);
+    }
+    return "OK " + this.status();
+  }
+
+  // the colors of the board, row by row
+  String board() {
+    if (this.engine == null) {
+      return "ERR no game";
+    }
+    StringBuilder result = new StringBuilder("OK");
+    for (int i = 0; i < this.engine.grid.numCells; i++) {
+      result.append(' ').append(this.engine.grid.getColor(i));
+    }
+    return result.toString();
+  }
+
+  // is the game over, by the same rule a world ends its game by?
+  boolean isOver() {
+    return this.engine.isOver();
+  }
+
+  // the attempts, flooded cells and state of the game; a game that can't be
+  // won any more is lost
+  String status() {
+    return this.engine.attempts + " " + this.engine.floodedCount + " "
+        + (this.engine.isWon() ? "WON" : this.isOver() ? "LOST" : "PLAYING");
+  }
+
+  // answer the lines of the given connection until it hangs up or says QUIT
+  void serve(Socket socket) {
+    try (Socket s = socket;
+        BufferedReader in = new BufferedReader(
+            new InputStreamReader(s.getInputStream(), StandardCharsets.US_ASCII));
+        PrintWriter out = new PrintWriter(
+            new OutputStreamWriter(s.getOutputStream(), StandardCharsets.US_ASCII))) {
+      String line = in.readLine();
+      while (line != null) {
+        String answer = this.handle(line);
+        out.print(answer);
+        out.print('\n');
+        out.flush();
+        if (answer.equals("BYE")) {
+          return;
+        }
+        line = in.readLine();
+      }
+    } catch (IOException e) {
+      // the player hung up; the session ends with its connection
+      return;
+    }
+  }
+}
+
+// Hosts games for many players at once on a local socket. Every connection is
+// a GameSession of its own, served on a virtual thread where the JVM has them
+// (Java 21 and later) and on a pooled thread otherwise; sessions share
+// nothing but the listening socket.
+class GameServer {
+  // the socket players connect to
+  ServerSocket socket;
+
+  // runs the sessions
+  ExecutorService sessions;
+
+  // does every session get a virtual thread?
+  boolean virtualThreads;
+
+  // the biggest board a session may play
+  int maxSize = 1024;
+
+  // accepts connections
+  Thread acceptor;
+
+  // listen on the given port of the loopback address, or on any free port if it is 0
+  GameServer(int port) {
+    try {
+      this.socket = new ServerSocket(port, 1024, InetAddress.getLoopbackAddress());
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    this.sessions = this.sessionExecutor();
+    this.acceptor = new Thread(this::accept, "flood-it-acceptor");
+    this.acceptor.setDaemon(true);
+    this.acceptor.start();
+  }
+
+  // one virtual thread per task if the JVM can, otherwise a pool that grows
+  // to a platform thread per session
+  ExecutorService sessionExecutor() {
+    try {
+      ExecutorService executor = (ExecutorService) Executors.class
+          .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+      this.virtualThreads = true;
+      return executor;
+    } catch (ReflectiveOperationException e) {
+      this.virtualThreads = false;
+      return Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "flood-it-session");
+        t.setDaemon(true);
+        return t;
+      });
+    }
+  }
+
+  // the port the server listens on
+  int port() {
+    return this.socket.getLocalPort();
+  }
+
+  // hand every connection to a session of its own until the server is closed
+  void accept() {
+    while (!this.socket.isClosed()) {
+      try {
+        Socket player = this.socket.accept();
+        player.setTcpNoDelay(true);
+        this.sessions.execute(() -> new GameSession(this.maxSize).serve(player));
+      } catch (IOException e) {
+        // closing the server socket ends the loop
+        continue;
+      }
+    }
+  }
+
+  // stop listening and end every session
+  void close() {
+    try {
+      this.socket.close();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    this.sessions.shutdownNow();
+  }
+
+  public static void main(String[] args) throws InterruptedException {
+    GameServer server = new GameServer(args.length > 0 ? Integer.parseInt(args[0]) : 7777);
+    System.out.println("Flood-It server on port " + server.port()
+        + (server.virtualThreads ? " with virtual threads" : " with a thread pool"));
+    server.acceptor.join();
+  }
+}
+
+// A player connected to a GameServer, for tests and bots
+class GameClient {
+  Socket socket;
+  BufferedReader in;
+  PrintWriter out;
+
+  // connect to the server on the given port of the loopback address
+  GameClient(int port) {
+    try {
+      this.socket = new Socket(InetAddress.getLoopbackAddress(), port);
+      this.socket.setTcpNoDelay(true);
+      this.in = new BufferedReader(
+          new InputStreamReader(this.socket.getInputStream(), StandardCharsets.US_ASCII));
+      this.out = new PrintWriter(
+          new OutputStreamWriter(this.socket.getOutputStream(), StandardCharsets.US_ASCII));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  // send one line and wait for the answer
+  String send(String line) {
+    this.out.print(line);
+    this.out.print('\n');
+    this.out.flush();
+    try {
+      return this.in.readLine();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  // send a batch of moves in one line
+  String moves(int... colors) {
+    StringBuilder line = new StringBuilder("MOVES");
+    for (int c : colors) {
+      line.append(' ').append(c);
+    }
+    return this.send(line.toString());
+  }
+
+  // hang up
+  void close() {
+    this.send("QUIT");
+    try {
+      this.socket.close();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
+
+class ExamplesFloodItServer {
+
+  // test the answers of a session without a connection
+  void testSession(Tester t) {
+    GameSession session = new GameSession(26);
+    t.checkExpect(session.handle("MOVES 1"), "ERR no game");
+    t.checkExpect(session.handle("BOARD"), "ERR no game");
+    t.checkExpect(session.handle("NEW 4 3 5"),
+        "OK 5 " + FloodItEngine.newGame(4, 3, 5L).maxAttempts);
+
+    FloodItEngine expected = FloodItEngine.newGame(4, 3, 5L);
+    StringBuilder board = new StringBuilder("OK");
+    for (int i = 0; i < 16; i++) {
+      board.append(' ').append(expected.grid.getColor(i));
+    }
+    t.checkExpect(session.handle("BOARD"), board.toString());
+
+    expected.applyMove(0);
+    expected.applyMove(2);
+    t.checkExpect(session.handle("MOVES 0 2"),
+        "OK 2 " + expected.floodedCount + " PLAYING");
+    t.checkExpect(session.engine.grid.colors, expected.grid.colors);
+
+    t.checkExpect(session.handle("MOVES 7"), "ERR no color 7; 2 " + expected.floodedCount
+        + " PLAYING");
+    t.checkExpect(session.handle("MOVES x"), "ERR not a number: For input string: \"x\"");
+    t.checkExpect(session.handle("NEW 30 3"), "ERR boards are at most 26 cells across");
+    t.checkExpect(session.handle("NEW 4 257"),
+        "ERR You must have between 3 and 256 colors (inclusive)");
+    t.checkExpect(session.handle("NEW 4"),
+        "ERR NEW takes a size, a number of colors and maybe a seed");
+    t.checkExpect(session.handle("JUMP"), "ERR unknown command JUMP");
+    t.checkExpect(session.handle("QUIT"), "BYE");
+  }
+
+  // test that a batch of moves stops once the game is over
+  void testSessionGameOver(Tester t) {
+    GameSession session = new GameSession(26);
+    session.handle("NEW 2 3 1");
+    int[] greedy = new FloodItSolver(FloodItEngine.newGame(2, 3, 1L)).greedy();
+    StringBuilder line = new StringBuilder("MOVES");
+    for (int c : greedy) {
+      line.append(' ').append(c);
+    }
+    for (int i = 0; i < 10; i++) {
+      line.append(' ').append(i % 3);
+    }
+    String answer = session.handle(line.toString());
+    t.checkExpect(answer.endsWith(" 4 WON"), true);
+    t.checkExpect(session.engine.attempts, greedy.length);
+  }
+
+  // test that a game that can't be won any more is lost and takes no more
+  // moves, before its attempts run out
+  void testSessionCannotWin(Tester t) {
+    GameSession session = new GameSession(26);
+    session.handle("NEW 14 6 4");
+    StringBuilder line = new StringBuilder("MOVES");
+    for (int i = 0; i < 200; i++) {
+      line.append(' ').append(i % 6);
+    }
+    String answer = session.handle(line.toString());
+    t.checkExpect(answer.endsWith(" LOST"), true);
+    t.checkExpect(session.engine.cannotWin(), true);
+    t.checkExpect(session.engine.isLost(), false);
+    int attempts = session.engine.attempts;
+    t.checkExpect(session.handle("MOVES 1 2"), answer);
+    t.checkExpect(session.engine.attempts, attempts);
+  }
+
+  // test many players at once over loopback, each checking its own game
+  // against an engine playing the same moves
+  void testServer(Tester t) throws Exception {
+    GameServer server = new GameServer(0);
+    ExecutorService players = Executors.newFixedThreadPool(16);
+    ArrayList<Future<Boolean>> games = new ArrayList<Future<Boolean>>();
+    for (int p = 0; p < 64; p++) {
+      long seed = p;
+      games.add(players.submit(() -> {
+        GameClient client = new GameClient(server.port());
+        client.send("NEW 14 5 " + seed);
+        FloodItEngine expected = FloodItEngine.newGame(14, 5, seed);
+        String answer = "";
+        for (int batch = 0; batch < 6; batch++) {
+          int[] moves = {(int) (seed + batch) % 5, (int) (seed + 2 * batch + 1) % 5};
+          answer = client.moves(moves);
+          for (int c : moves) {
+            if (!expected.isOver()) {
+              expected.applyMove(c);
+            }
+          }
+        }
+        String board = client.send("BOARD");
+        client.close();
+        String[] cells = board.split(" ");
+        int[] colors = new int[cells.length - 1];
+        for (int i = 0; i < colors.length; i++) {
+          colors[i] = Integer.parseInt(cells[i + 1]);
+        }
+        int[] expectedColors = new int[expected.grid.numCells];
+        for (int i = 0; i < expectedColors.length; i++) {
+          expectedColors[i] = expected.grid.getColor(i);
+        }
+        return Arrays.equals(colors, expectedColors)
+            && answer.startsWith("OK " + expected.attempts + " " + expected.floodedCount);
+      }));
+    }
+    for (Future<Boolean> game : games) {
+      t.checkExpect(game.get(30, TimeUnit.SECONDS), true);
+    }
+    players.shutdown();
+    server.close();
+    t.checkExpect(server.socket.isClosed(), true);
+  }
+}
@@ -0,0 +1,830 @@
+import tester.Tester;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.PriorityQueue;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+// A set of flooded regions, usable as a key in a hash map
+class RegionSet {
+  // the flooded regions, 64 per word
+  long[] words;
+
+  // the hash of the words, worked out once
+  int hash;
+
+  RegionSet(long[] words) {
+    this.words = words;
+    this.hash = Arrays.hashCode(words);
+  }
+
+  public boolean equals(Object other) {
+    return other instanceof RegionSet && Arrays.equals(this.words, ((RegionSet) other).words);
+  }
+
+  public int hashCode() {
+    return this.hash;
+  }
+}
+
+// A state reached by the search, with the move that led to it
+class SolverNode {
+  // the flooded regions
+  RegionSet flooded;
+
+  // the number of moves made to get here
+  int moves;
+
+  // a lower bound on the number of moves made to get here and then finish
+  int estimate;
+
+  // the state this one was reached from, and the color played to get here
+  SolverNode parent;
+  int color;
+
+  SolverNode(RegionSet flooded, int moves, int estimate, SolverNode parent, int color) {
+    this.flooded = flooded;
+    this.moves = moves;
+    this.estimate = estimate;
+    this.parent = parent;
+    this.color = color;
+  }
+
+  // the colors played to get here, in order
+  int[] path() {
+    int[] path = new int[this.moves];
+    SolverNode node = this;
+    for (int i = this.moves - 1; i >= 0; i--) {
+      path[i] = node.color;
+      node = node.parent;
+    }
+    return path;
+  }
+}
+
+// orders nodes by their estimate, preferring the deeper node on a tie
+class SolverNodeComparator implements Comparator<SolverNode> {
+  public int compare(SolverNode a, SolverNode b) {
+    if (a.estimate != b.estimate) {
+      return Integer.compare(a.estimate, b.estimate);
+    }
+    return Integer.compare(b.moves, a.moves);
+  }
+}
+
+// What a search found and what it cost
+class SolverResult {
+  // the colors to play, in order
+  int[] moves;
+
+  // number of states expanded
+  long nodesExpanded;
+
+  // time the search took
+  long nanos;
+
+  // most heap in use while searching, sampled as the search went, or for a
+  // parallel search the most its table and tasks held in any round
+  long peakBytes;
+
+  // are the moves known to be the fewest possible?
+  boolean optimal;
+
+  SolverResult(int[] moves, long nodesExpanded, long nanos, long peakBytes, boolean optimal) {
+    this.moves = moves;
+    this.nodesExpanded = nodesExpanded;
+    this.nanos = nanos;
+    this.peakBytes = peakBytes;
+    this.optimal = optimal;
+  }
+
+  SolverResult(int[] moves, long nodesExpanded, long nanos, long peakBytes) {
+    this(moves, nodesExpanded, nanos, peakBytes, true);
+  }
+
+  public String toString() {
+    return this.moves.length + " moves" + (this.optimal ? " " : " (not optimal) ")
+        + Arrays.toString(this.moves) + ", "
+        + this.nodesExpanded + " nodes, " + (this.nanos / 1000000) + " ms, "
+        + (this.peakBytes >> 20) + " MB";
+  }
+}
+
+// Finds the fewest moves that flood a board, by an A* search over sets of
+// flooded regions. A state's estimate never overestimates the moves left: a
+// region k rings of regions away from the flood can't be flooded before the
+// k-th move, which has to be of its color, so every color needs a move of its
+// own no earlier than the ring of its farthest region.
+class FloodItSolver {
+  // the regions of the board being solved
+  RegionGraph graph;
+
+  // number of words in a set of regions
+  int words;
+
+  // the regions of each color
+  long[][] colorRegions;
+
+  // the neighbors of each region
+  long[][] neighborRegions;
+
+  // every region
+  long[] allRegions;
+
+  // how often the heap is sampled, in expanded nodes
+  int sampleEvery = 4096;
+
+  // constructor
+  FloodItSolver(RegionGraph graph) {
+    this.graph = graph;
+    this.words = (graph.numRegions + 63) >>> 6;
+    this.colorRegions = new long[graph.numColors][this.words];
+    this.neighborRegions = new long[graph.numRegions][this.words];
+    this.allRegions = new long[this.words];
+    for (int r = 0; r < graph.numRegions; r++) {
+      this.colorRegions[graph.regionColor[r]][r >>> 6] |= 1L << r;
+      this.allRegions[r >>> 6] |= 1L << r;
+      for (int i = 0; i < graph.degree(r); i++) {
+        int n = graph.neighbor(r, i);
+        this.neighborRegions[r][n >>> 6] |= 1L << n;
+      }
+    }
+  }
+
+  // a solver for the board of an engine that is between moves
+  FloodItSolver(FloodItEngine engine) {
+    this(new RegionGraph(engine));
+  }
+
+  // the set holding only the region of the top left cell
+  long[] start() {
+    long[] flooded = new long[this.words];
+    flooded[0] = 1L;
+    return flooded;
+  }
+
+  // the regions that are not flooded but are next to a flooded one
+  long[] bordering(long[] flooded) {
+    long[] result = new long[this.words];
+    for (int w = 0; w < this.words; w++) {
+      long bits = flooded[w];
+      while (bits != 0) {
+        int r = (w << 6) + Long.numberOfTrailingZeros(bits);
+        bits &= bits - 1;
+        long[] near = this.neighborRegions[r];
+        for (int i = 0; i < this.words; i++) {
+          result[i] |= near[i];
+        }
+      }
+    }
+    for (int w = 0; w < this.words; w++) {
+      result[w] &= ~flooded[w];
+    }
+    return result;
+  }
+
+  // the flooded regions after playing the given color
+  long[] play(long[] flooded, long[] bordering, int color) {
+    long[] result = new long[this.words];
+    long[] regions = this.colorRegions[color];
+    for (int w = 0; w < this.words; w++) {
+      result[w] = flooded[w] | (bordering[w] & regions[w]);
+    }
+    return result;
+  }
+
+  // is every region flooded?
+  boolean isDone(long[] flooded) {
+    return Arrays.equals(flooded, this.allRegions);
+  }
+
+  // do any of the regions of the given color lie in the given set?
+  boolean any(long[] set, int color) {
+    long[] regions = this.colorRegions[color];
+    for (int w = 0; w < this.words; w++) {
+      if ((set[w] & regions[w]) != 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // are all the regions of the given color that are not flooded in the given set?
+  boolean allIn(long[] flooded, long[] set, int color) {
+    long[] regions = this.colorRegions[color];
+    for (int w = 0; w < this.words; w++) {
+      if ((regions[w] & ~flooded[w] & ~set[w]) != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // a lower bound on the number of moves that flood every region
+  int lowerBound(long[] flooded) {
+    // the ring of the farthest region of each color, or 0 if none is left
+    int[] farthest = new int[this.graph.numColors];
+    long[] reached = flooded.clone();
+    long[] ring = flooded;
+    int rings = 0;
+    while (!this.isDone(reached)) {
+      long[] next = this.bordering(ring);
+      for (int w = 0; w < this.words; w++) {
+        next[w] &= ~reached[w];
+        reached[w] |= next[w];
+      }
+      ring = next;
+      rings++;
+      for (int c = 0; c < this.graph.numColors; c++) {
+        if (this.any(ring, c)) {
+          farthest[c] = rings;
+        }
+      }
+    }
+
+    return FloodItSolver.ringBound(farthest, this.graph.numColors, rings);
+  }
+
+  // the lower bound from the ring of the farthest region of each of the given
+  // number of colors, 0 for a color with none left, out of the given number of
+  // rings: a region k rings away can't be flooded before the k-th move, which
+  // has to be of its color, so the colors whose farthest region is k or more
+  // rings away need moves of their own from the k-th move on
+  static int ringBound(int[] farthest, int numColors, int rings) {
+    int bound = 0;
+    for (int k = 1; k <= rings; k++) {
+      int colors = 0;
+      for (int c = 0; c < numColors; c++) {
+        if (farthest[c] >= k) {
+          colors++;
+        }
+      }
+      bound = Math.max(bound, k - 1 + colors);
+    }
+    return bound;
+  }
+
+  // the colors worth playing from the given state: a color whose regions left
+  // all border the flooded ones is always worth playing first, so if there is
+  // one it is the only choice; otherwise every color that floods something
+  ArrayList<Integer> choices(long[] flooded, long[] bordering) {
+    ArrayList<Integer> result = new ArrayList<Integer>();
+    for (int c = 0; c < this.graph.numColors; c++) {
+      if (this.any(bordering, c) && this.allIn(flooded, bordering, c)) {
+        result.add(c);
+        return result;
+      }
+    }
+    for (int c = 0; c < this.graph.numColors; c++) {
+      if (this.any(bordering, c)) {
+        result.add(c);
+      }
+    }
+    return result;
+  }
+
+  // the moves made by always playing the color that floods the most cells, or
+  // a color whose regions left all border the flooded ones, as the greedy
+  // player of DifficultyEstimate does
+  int[] greedy() {
+    DifficultyEstimate player = new DifficultyEstimate(this.graph);
+    player.startAtTopLeft();
+    int[] moves = new int[this.graph.numRegions];
+    return Arrays.copyOf(moves, player.playout(true, moves));
+  }
+
+  // the fewest moves that flood the board, from the region of the top left cell
+  SolverResult solve() {
+    long startTime = System.nanoTime();
+    Runtime runtime = Runtime.getRuntime();
+    long peakBytes = runtime.totalMemory() - runtime.freeMemory();
+    long expanded = 0;
+
+    PriorityQueue<SolverNode> open =
+        new PriorityQueue<SolverNode>(1024, new SolverNodeComparator());
+    // the fewest moves any state has been reached in so far
+    HashMap<RegionSet, Integer> best = new HashMap<RegionSet, Integer>();
+
+    long[] start = this.start();
+    RegionSet startSet = new RegionSet(start);
+    open.add(new SolverNode(startSet, 0, this.lowerBound(start), null, -1));
+    best.put(startSet, 0);
+
+    while (!open.isEmpty()) {
+      SolverNode node = open.poll();
+      if (best.get(node.flooded) < node.moves) {
+        continue;
+      }
+      long[] flooded = node.flooded.words;
+      if (this.isDone(flooded)) {
+        return new SolverResult(node.path(), expanded, System.nanoTime() - startTime,
+            peakBytes);
+      }
+
+      expanded++;
+      if (expanded % this.sampleEvery == 0) {
+        peakBytes = Math.max(peakBytes, runtime.totalMemory() - runtime.freeMemory());
+      }
+
+      long[] bordering = this.bordering(flooded);
+      for (int c : this.choices(flooded, bordering)) {
+        long[] next = this.play(flooded, bordering, c);
+        RegionSet nextSet = new RegionSet(next);
+        Integer seen = best.get(nextSet);
+        if (seen == null || seen > node.moves + 1) {
+          best.put(nextSet, node.moves + 1);
+          open.add(new SolverNode(nextSet, node.moves + 1,
+              node.moves + 1 + this.lowerBound(next), node, c));
+        }
+      }
+    }
+    throw new IllegalStateException("Every board can be flooded");
+  }
+}
+
+// The fewest moves any state has been reached in, shared by the workers of a
+// parallel search. States are known by a Zobrist hash of their flooded regions:
+// the low bits of the hash pick a slot and each entry packs the high bits with
+// the round it was made in and the moves plus one, so a slot is claimed or
+// lowered with a single compare-and-set and no locks. Entries from an earlier
+// round count as empty, so starting a round doesn't have to wipe the table. A
+// state whose slots are all taken is simply not remembered.
+class TranspositionTable {
+  // the entries, 0 when empty
+  AtomicLongArray entries;
+
+  // the number of entries minus one
+  int mask;
+
+  // how many slots from the first one a state may be kept in
+  int probes = 8;
+
+  // the round being searched, from 1 to 255
+  long round = 1;
+
+  // a table of 2 to the given power entries
+  TranspositionTable(int bits) {
+    this.entries = new AtomicLongArray(1 << bits);
+    this.mask = (1 << bits) - 1;
+  }
+
+  // record that the state with the given hash was reached in the given number
+  // of moves, or return false if it was already reached in as few this round
+  boolean visit(long hash, int moves) {
+    long tag = hash & ~0xFFFFFFL;
+    long entry = tag | (this.round << 16) | (moves + 1);
+    for (int i = 0; i < this.probes; i++) {
+      int slot = ((int) hash + i) & this.mask;
+      while (true) {
+        long old = this.entries.get(slot);
+        if (old == 0 || ((old >>> 16) & 0xFF) != this.round) {
+          if (this.entries.compareAndSet(slot, old, entry)) {
+            return true;
+          }
+        }
+        else if ((old & ~0xFFFFFFL) != tag) {
+          break;
+        }
+        else if ((old & 0xFFFFL) <= moves + 1) {
+          return false;
+        }
+        else if (this.entries.compareAndSet(slot, old, entry)) {
+          return true;
+        }
+      }
+    }
+    return true;
+  }
+
+  // forget every state, by starting the next round
+  void clear() {
+    this.round++;
+    if (this.round == 256) {
+      this.round = 1;
+      for (int i = 0; i <= this.mask; i++) {
+        this.entries.set(i, 0);
+      }
+    }
+  }
+}
+
+// Searches the moves from one state in the pool of a parallel search
+class SolverTask extends RecursiveAction {
+  private static final long serialVersionUID = 1L;
+
+  ParallelFloodItSolver search;
+  long[] flooded;
+  long hash;
+  int[] path;
+  int moves;
+  int bound;
+
+  // states this task expanded and has not yet added to the search's count
+  int expanded;
+
+  SolverTask(ParallelFloodItSolver search, long[] flooded, long hash, int[] path, int moves,
+      int bound) {
+    this.search = search;
+    this.flooded = flooded;
+    this.hash = hash;
+    this.path = path;
+    this.moves = moves;
+    this.bound = bound;
+  }
+
+  protected void compute() {
+    this.search.search(this, this.flooded, this.hash, this.path, this.moves, this.bound);
+    this.search.flush(this);
+  }
+}
+
+// Finds the fewest moves that flood a board with an iterative deepening A*
+// search split across a ForkJoinPool. Each round looks for a solution of
+// exactly the bound moves, cutting off states whose moves plus lower bound go
+// over it; near the root every choice becomes a task of its own for idle
+// workers to steal, and the last few moves are searched in place. Workers
+// share one transposition table, so a state reached again in as many moves is
+// not searched twice. A search that runs out of nodes gives back the greedy
+// answer it started with.
+class ParallelFloodItSolver {
+  // the bitsets and bounds of the board being solved
+  FloodItSolver solver;
+
+  // the random key of each region, XORed together into the hash of a state
+  long[] keys;
+
+  // the states reached this round
+  TranspositionTable table;
+
+  // the workers
+  ForkJoinPool pool;
+
+  // states with no more than this many moves left under the bound are
+  // searched by one worker
+  int sequentialBelow = 5;
+
+  // the most states to expand before giving up on an optimal answer
+  long maxNodes = Long.MAX_VALUE;
+
+  // states expanded so far, added to by each task every checkEvery states it
+  // expands and once more when it is done
+  LongAdder nodes = new LongAdder();
+
+  // how many states a task expands between adding them to nodes and checking
+  // them against maxNodes
+  int checkEvery;
+
+  // tasks made this round
+  LongAdder tasks = new LongAdder();
+
+  // the solution found this round, if any
+  AtomicReference<int[]> found = new AtomicReference<int[]>();
+
+  // has the search run out of nodes?
+  volatile boolean stopped;
+
+  // constructor
+  ParallelFloodItSolver(RegionGraph graph, int threads, int tableBits) {
+    this.solver = new FloodItSolver(graph);
+    this.keys = new long[graph.numRegions];
+    SplittableRandom random = new SplittableRandom(graph.numRegions);
+    for (int r = 0; r < graph.numRegions; r++) {
+      this.keys[r] = random.nextLong();
+    }
+    this.table = new TranspositionTable(tableBits);
+    this.pool = new ForkJoinPool(threads);
+  }
+
+  // a solver for the board of an engine that is between moves, using every core
+  ParallelFloodItSolver(FloodItEngine engine) {
+    this(new RegionGraph(engine), Runtime.getRuntime().availableProcessors(), 22);
+  }
+
+  // the hash of a set of flooded regions
+  long hash(long[] flooded) {
+    long hash = 0;
+    for (int w = 0; w < flooded.length; w++) {
+      long bits = flooded[w];
+      while (bits != 0) {
+        hash ^= this.keys[(w << 6) + Long.numberOfTrailingZeros(bits)];
+        bits &= bits - 1;
+      }
+    }
+    return hash;
+  }
+
+  // the hash of the state after a move, from the hash of the one before it
+  long rehash(long hash, long[] before, long[] after) {
+    for (int w = 0; w < before.length; w++) {
+      long bits = after[w] & ~before[w];
+      while (bits != 0) {
+        hash ^= this.keys[(w << 6) + Long.numberOfTrailingZeros(bits)];
+        bits &= bits - 1;
+      }
+    }
+    return hash;
+  }
+
+  // the moves made by always playing the color that floods the most cells,
+  // which the search only has to beat
+  int[] greedy() {
+    return this.solver.greedy();
+  }
+
+  // the fewest moves that flood the board, from the region of the top left cell
+  SolverResult solve() {
+    long startTime = System.nanoTime();
+    this.nodes.reset();
+    this.checkEvery = (int) Math.min(1024, Math.max(1, this.maxNodes));
+    this.stopped = false;
+    int[] greedy = this.greedy();
+    long[] start = this.solver.start();
+    long startHash = this.hash(start);
+    long peakBytes = 0;
+
+    // the greedy answer is optimal once no shorter one is left to look for
+    for (int bound = this.solver.lowerBound(start); bound < greedy.length; bound++) {
+      this.table.clear();
+      this.found.set(null);
+      this.tasks.reset();
+      this.pool.invoke(new SolverTask(this, start, startHash, new int[bound], 0, bound));
+      peakBytes = Math.max(peakBytes, this.bytesHeld(bound));
+      if (this.found.get() != null) {
+        return new SolverResult(this.found.get(), this.nodes.sum(),
+            System.nanoTime() - startTime, peakBytes, true);
+      }
+      if (this.stopped) {
+        return new SolverResult(greedy, this.nodes.sum(), System.nanoTime() - startTime,
+            peakBytes, false);
+      }
+    }
+    return new SolverResult(greedy, this.nodes.sum(), System.nanoTime() - startTime, peakBytes,
+        true);
+  }
+
+  // the most bytes a round to the given bound can hold at once: the table, the
+  // bitset and path of every task made, and the bitsets on each worker's stack
+  // of states searched in place
+  long bytesHeld(int bound) {
+    long bitset = 8L * this.solver.words;
+    return 8L * (this.table.mask + 1L)
+        + (this.tasks.sum() + 1) * (bitset + 4L * bound)
+        + this.pool.getParallelism() * (this.sequentialBelow + 1L) * 2 * bitset;
+  }
+
+  // add the states a task has expanded to the count, stopping the search once
+  // it has expanded too many
+  void flush(SolverTask task) {
+    this.nodes.add(task.expanded);
+    task.expanded = 0;
+    if (this.nodes.sum() > this.maxNodes) {
+      this.stopped = true;
+    }
+  }
+
+  // look for a way to flood every region from the given state in no more than
+  // the bound moves, recording the first one found
+  void search(SolverTask task, long[] flooded, long hash, int[] path, int moves, int bound) {
+    if (this.found.get() != null || this.stopped) {
+      return;
+    }
+    if (this.solver.isDone(flooded)) {
+      this.found.compareAndSet(null, Arrays.copyOf(path, moves));
+      return;
+    }
+    if (moves + this.solver.lowerBound(flooded) > bound || !this.table.visit(hash, moves)) {
+      return;
+    }
+    task.expanded++;
+    if (task.expanded == this.checkEvery) {
+      this.flush(task);
+      if (this.stopped) {
+        return;
+      }
+    }
+
+    long[] bordering = this.solver.bordering(flooded);
+    ArrayList<Integer> choices = this.solver.choices(flooded, bordering);
+    if (bound - moves > this.sequentialBelow && choices.size() > 1) {
+      ArrayList<SolverTask> tasks = new ArrayList<SolverTask>();
+      for (int c : choices) {
+        long[] next = this.solver.play(flooded, bordering, c);
+        int[] nextPath = path.clone();
+        nextPath[moves] = c;
+        tasks.add(new SolverTask(this, next, this.rehash(hash, flooded, next), nextPath,
+            moves + 1, bound));
+      }
+      this.tasks.add(tasks.size());
+      ForkJoinTask.invokeAll(tasks);
+    }
+    else {
+      for (int c : choices) {
+        long[] next = this.solver.play(flooded, bordering, c);
+        path[moves] = c;
+        this.search(task, next, this.rehash(hash, flooded, next), path, moves + 1, bound);
+      }
+    }
+  }
+
+  // stop the workers
+  void shutdown() {
+    this.pool.shutdown();
+  }
+}
+
+class ExamplesFloodItSolver {
+
+  // play the given moves on an engine and check they flood its board
+  void checkSolves(Tester t, FloodItEngine engine, int[] moves) {
+    for (int c : moves) {
+      engine.applyMove(c);
+    }
+    t.checkExpect(engine.isWon(), true);
+  }
+
+  // test the lower bound on a board whose answer is known:
+  // 0 1 2
+  // 1 2 0
+  // 2 0 1
+  void testLowerBound(Tester t) {
+    FloodItEngine engine = new FloodItEngine(3, 3, 1L);
+    int[] colors = {0, 1, 2, 1, 2, 0, 2, 0, 1};
+    for (int i = 0; i < 9; i++) {
+      engine.grid.setColor(i, colors[i]);
+    }
+    engine.recount();
+    engine.clickedColor = 0;
+    engine.finishWave();
+    FloodItSolver solver = new FloodItSolver(engine);
+
+    // the bottom right cell is four rings of regions away
+    t.checkExpect(solver.lowerBound(solver.start()), 4);
+    SolverResult result = solver.solve();
+    t.checkExpect(result.moves.length, 4);
+    this.checkSolves(t, engine, result.moves);
+  }
+
+  // test that a color whose regions left all border the flood is played first
+  void testChoices(Tester t) {
+    // 0 1 1
+    // 2 2 1
+    // 0 0 0
+    FloodItEngine engine = new FloodItEngine(3, 3, 1L);
+    int[] colors = {0, 1, 1, 2, 2, 1, 0, 0, 0};
+    for (int i = 0; i < 9; i++) {
+      engine.grid.setColor(i, colors[i]);
+    }
+    engine.recount();
+    engine.clickedColor = 0;
+    engine.finishWave();
+    FloodItSolver solver = new FloodItSolver(engine);
+    long[] start = solver.start();
+    long[] bordering = solver.bordering(start);
+    t.checkExpect(solver.choices(start, bordering),
+        new ArrayList<Integer>(Arrays.asList(1)));
+    t.checkExpect(solver.solve().moves.length, 3);
+    t.checkExpect(solver.solve().moves[0], 1);
+  }
+
+  // test that the solver finds an answer no longer than any other found by playing
+  void testOptimal(Tester t) {
+    for (long seed = 0; seed < 5; seed++) {
+      FloodItEngine engine = FloodItEngine.newGame(8, 4, seed);
+      SolverResult result = new FloodItSolver(engine).solve();
+      t.checkExpect(result.nodesExpanded > 0, true);
+      t.checkExpect(result.moves.length <= this.greedyMoves(FloodItEngine.newGame(8, 4, seed)),
+          true);
+      this.checkSolves(t, engine, result.moves);
+    }
+  }
+
+  // test that the greedy moves flood the board, in no fewer moves than the
+  // search, without a pool of workers
+  void testGreedy(Tester t) {
+    for (long seed = 0; seed < 5; seed++) {
+      FloodItEngine engine = FloodItEngine.newGame(8, 4, seed);
+      FloodItSolver solver = new FloodItSolver(engine);
+      int[] greedy = solver.greedy();
+      t.checkExpect(solver.solve().moves.length <= greedy.length, true);
+      this.checkSolves(t, engine, greedy);
+    }
+  }
+
+  // the number of moves taken by always playing the color that floods the most cells
+  int greedyMoves(FloodItEngine engine) {
+    while (!engine.isWon()) {
+      RegionEngine regions = new RegionEngine(engine);
+      int bestColor = 0;
+      int bestSize = -1;
+      for (int c = 0; c < engine.numColors; c++) {
+        RegionEngine copy = new RegionEngine(regions.graph);
+        int size = copy.applyMove(c);
+        if (size > bestSize) {
+          bestSize = size;
+          bestColor = c;
+        }
+      }
+      engine.applyMove(bestColor);
+    }
+    return engine.movesUsed();
+  }
+
+  // the solver to compare against: two workers and a small table
+  ParallelFloodItSolver parallel(FloodItEngine engine) {
+    return new ParallelFloodItSolver(new RegionGraph(engine), 2, 16);
+  }
+
+  // test that a state is remembered with the fewest moves it was reached in
+  void testTranspositionTable(Tester t) {
+    TranspositionTable table = new TranspositionTable(4);
+    t.checkExpect(table.visit(0x123456789L << 24, 5), true);
+    t.checkExpect(table.visit(0x123456789L << 24, 5), false);
+    t.checkExpect(table.visit(0x123456789L << 24, 6), false);
+    t.checkExpect(table.visit(0x123456789L << 24, 3), true);
+    t.checkExpect(table.visit(0x123456789L << 24, 4), false);
+    // the same slot, but another state
+    t.checkExpect(table.visit(0x987654321L << 24, 7), true);
+    t.checkExpect(table.visit(0x987654321L << 24, 7), false);
+    table.clear();
+    t.checkExpect(table.visit(0x123456789L << 24, 4), true);
+    t.checkExpect(table.visit(0x987654321L << 24, 9), true);
+    // the round wraps around to a wiped table
+    for (int i = 0; i < 254; i++) {
+      table.clear();
+    }
+    t.checkExpect(table.round, 1L);
+    t.checkExpect(table.entries.get(0), 0L);
+  }
+
+  // test that hashing a state after a move matches hashing it from scratch
+  void testRehash(Tester t) {
+    ParallelFloodItSolver search = this.parallel(FloodItEngine.newGame(8, 4, 3L));
+    FloodItSolver solver = search.solver;
+    long[] flooded = solver.start();
+    long hash = search.hash(flooded);
+    t.checkExpect(hash, search.keys[0]);
+    while (!solver.isDone(flooded)) {
+      long[] bordering = solver.bordering(flooded);
+      long[] next = solver.play(flooded, bordering, solver.choices(flooded, bordering).get(0));
+      hash = search.rehash(hash, flooded, next);
+      flooded = next;
+      t.checkExpect(hash, search.hash(flooded));
+    }
+    search.shutdown();
+  }
+
+  // test that the parallel search finds as few moves as the sequential one
+  void testParallelOptimal(Tester t) {
+    for (long seed = 0; seed < 5; seed++) {
+      FloodItEngine engine = FloodItEngine.newGame(8, 4, seed);
+      SolverResult expected = new FloodItSolver(engine).solve();
+      ParallelFloodItSolver search = this.parallel(engine);
+      SolverResult result = search.solve();
+      search.shutdown();
+      t.checkExpect(result.optimal, true);
+      t.checkExpect(result.moves.length, expected.moves.length);
+      t.checkExpect(result.moves.length <= search.greedy().length, true);
+      this.checkSolves(t, engine, result.moves);
+    }
+  }
+
+  // test that a search out of nodes gives back the greedy answer
+  void testParallelGivesUp(Tester t) {
+    FloodItEngine engine = FloodItEngine.newGame(14, 6, 1L);
+    ParallelFloodItSolver search = this.parallel(engine);
+    search.maxNodes = 0;
+    SolverResult result = search.solve();
+    search.shutdown();
+    t.checkExpect(result.optimal, false);
+    t.checkExpect(result.moves.length, search.greedy().length);
+    this.checkSolves(t, engine, result.moves);
+  }
+
+  // test that a search counts every state its tasks expand, checking the count
+  // against maxNodes every so often rather than on every state
+  void testParallelCounts(Tester t) {
+    FloodItEngine engine = FloodItEngine.newGame(14, 6, 1L);
+    ParallelFloodItSolver search = this.parallel(engine);
+    search.maxNodes = 5000;
+    SolverResult result = search.solve();
+    t.checkExpect(search.checkEvery, 1024);
+    t.checkExpect(result.optimal, false);
+    t.checkExpect(result.nodesExpanded > 5000, true);
+    t.checkExpect(result.nodesExpanded, search.nodes.sum());
+
+    // the table alone is 2 to the 16 entries of 8 bytes
+    t.checkExpect(result.peakBytes > 8 << 16, true);
+    search.maxNodes = 3;
+    search.solve();
+    t.checkExpect(search.checkEvery, 3);
+    search.shutdown();
+  }
+}